@@ -0,0 +1,30 @@
+/**
+ * Punto de entrada del jar de benchmarks.
+ */
+package com.mycompany.dibuixets;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Clase BenchmarkRunner que ejecuta los benchmarks con el perfilador de GC activado,
+ * de modo que además del rendimiento y el tiempo medio se informa de la tasa de
+ * asignación de memoria (gc.alloc.rate.norm). Acepta las mismas opciones que JMH,
+ * por ejemplo un filtro: {@code java -jar benchmarks/target/benchmarks.jar Conversion}.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .jvmArgsAppend("-Djava.awt.headless=true")
+                .build();
+        new Runner(options).run();
+    }
+}
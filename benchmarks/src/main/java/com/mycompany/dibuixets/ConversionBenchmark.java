@@ -0,0 +1,72 @@
+/**
+ * Benchmarks de la conversión de Mat a BufferedImage y del preprocesado de OCR.
+ */
+package com.mycompany.dibuixets;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opencv.core.Mat;
+
+/**
+ * Clase ConversionBenchmark que mide la conversión de {@link ImageBridge} (usada por
+ * OpenCVDrawing y WebcamCaptureApp), con y sin reutilizar la imagen de destino, y el
+ * preprocesado de {@link TextRecognition}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConversionBenchmark {
+
+    @Param({"synthetic:640x480", "synthetic:1920x1080", "synthetic:6000x4000", "images/moon.jpg", "images/faces.png"})
+    public String image;
+
+    private Mat mat;
+    private File file;
+    private BufferedImage reused;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        OpenCVRuntime.ensureLoaded();
+        mat = ImageFixtures.load(image);
+        file = ImageFixtures.toTempFile(image);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mat.release();
+    }
+
+    @Benchmark
+    public BufferedImage matToBufferedImage() {
+        return ImageBridge.toBufferedImage(mat);
+    }
+
+    @Benchmark
+    public BufferedImage matToBufferedImageReused() {
+        reused = ImageBridge.toBufferedImage(mat, reused);
+        return reused;
+    }
+
+    @Benchmark
+    public BufferedImage textRecognitionGetImage() throws IOException {
+        return TextRecognition.getImage(file.getAbsolutePath());
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Benchmarks de la detección de rostros.
+ */
+package com.mycompany.dibuixets;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * Clase FaceDetectionBenchmark que mide {@link FaceDetector} a resolución completa, con
+ * copia reducida y con la ruta completa de detectAndSave. Esa ruta se mide de dos formas:
+ * en frío (lectura, detección, anotación y codificación JPEG en cada llamada) y con
+ * acierto en {@link DetectionCache}, que tras la primera llamada solo calcula el hash del
+ * fichero y comprueba que existe la imagen anotada. Todos los ficheros se escriben en
+ * una carpeta temporal, no en el directorio desde el que se ejecuta JMH.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FaceDetectionBenchmark {
+
+    @Param({"synthetic:640x480", "synthetic:1920x1080", "synthetic:6000x4000", "images/faces.png", "images/abdullah.jpg"})
+    public String image;
+
+    private Mat mat;
+    private File file;
+    private File folder;
+    private File output;
+    private DetectionCache cache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        OpenCVRuntime.ensureLoaded();
+        mat = ImageFixtures.load(image);
+        file = ImageFixtures.toTempFile(image);
+        folder = Files.createTempDirectory("bench-detections").toFile();
+        output = new File(folder, "annotated.jpg");
+        cache = new DetectionCache(new File(folder, "cache"), Long.MAX_VALUE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        mat.release();
+        deleteFolder(folder);
+    }
+
+    @Benchmark
+    public Rect[] detectFullResolution() {
+        return FaceDetector.detect(mat);
+    }
+
+    @Benchmark
+    public Rect[] detectDownscaled() {
+        return FaceDetector.detect(mat, DetectionOptions.downscaled());
+    }
+
+    /**
+     * Ruta de detectAndSave sin caché: lee la imagen, detecta sobre la copia reducida,
+     * dibuja los rostros y codifica el JPEG en cada llamada.
+     */
+    @Benchmark
+    public boolean detectAndSaveCold() {
+        Mat loaded = Imgcodecs.imread(file.getAbsolutePath());
+        try {
+            Rect[] faces = FaceDetector.detect(loaded, DetectionOptions.downscaled());
+            FaceDetector.annotate(loaded, faces);
+            return Imgcodecs.imwrite(output.getAbsolutePath(), loaded);
+        } finally {
+            loaded.release();
+        }
+    }
+
+    /**
+     * Ruta de detectAndSave con la imagen ya en {@link DetectionCache}: mide el hash del
+     * fichero y la búsqueda en la caché, no la detección.
+     */
+    @Benchmark
+    public File detectAndSaveCacheHit() throws IOException {
+        return cache.getAnnotatedImage(file, DetectionOptions.downscaled());
+    }
+
+    private static void deleteFolder(File folder) {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                deleteFolder(child);
+            }
+        }
+        folder.delete();
+    }
+}
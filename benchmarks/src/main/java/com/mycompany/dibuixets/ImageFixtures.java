@@ -0,0 +1,71 @@
+/**
+ * Imágenes de prueba compartidas por los benchmarks.
+ */
+package com.mycompany.dibuixets;
+
+import java.io.File;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Clase ImageFixtures que crea las imágenes de entrada de los benchmarks a partir de una
+ * descripción textual, para poder usarla como parámetro de JMH:
+ * "synthetic:ANCHOxALTO" genera una imagen BGR de ruido suavizado del tamaño indicado
+ * y cualquier otro valor se interpreta como ruta relativa a la raíz del proyecto
+ * (por ejemplo "images/moon.jpg"). Los benchmarks deben ejecutarse desde la raíz del
+ * proyecto para encontrar "images" y "data".
+ */
+final class ImageFixtures {
+
+    private static final String syntheticPrefix = "synthetic:";
+
+    private ImageFixtures() {
+    }
+
+    /**
+     * Carga o genera la imagen descrita.
+     *
+     * @param spec Descripción de la imagen.
+     * @return Imagen BGR de 8 bits.
+     */
+    static Mat load(String spec) {
+        if (spec.startsWith(syntheticPrefix)) {
+            String[] size = spec.substring(syntheticPrefix.length()).split("x");
+            Mat mat = new Mat(Integer.parseInt(size[1]), Integer.parseInt(size[0]), CvType.CV_8UC3);
+            // Semilla fija para que todas las ejecuciones midan la misma imagen
+            Core.setRNGSeed(42);
+            Core.randu(mat, 0, 256);
+            Imgproc.GaussianBlur(mat, mat, new org.opencv.core.Size(7, 7), 0);
+            return mat;
+        }
+        Mat mat = Imgcodecs.imread(new File(spec).getAbsolutePath());
+        if (mat.empty()) {
+            throw new IllegalStateException("No se ha encontrado la imagen de prueba " + spec
+                    + "; ejecuta los benchmarks desde la raíz del proyecto");
+        }
+        return mat;
+    }
+
+    /**
+     * Guarda la imagen descrita como PNG temporal, para las rutas que leen de disco.
+     *
+     * @param spec Descripción de la imagen.
+     * @return Fichero temporal, que se borra al salir de la JVM.
+     */
+    static File toTempFile(String spec) {
+        Mat mat = load(spec);
+        try {
+            File file = File.createTempFile("bench-", ".png");
+            file.deleteOnExit();
+            Imgcodecs.imwrite(file.getAbsolutePath(), mat);
+            return file;
+        } catch (java.io.IOException ex) {
+            throw new IllegalStateException(ex);
+        } finally {
+            mat.release();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/**
+ * Ejecución de tareas largas fuera del hilo de eventos de Swing.
+ */
+package com.mycompany.dibuixets;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.swing.SwingUtilities;
+
+/**
+ * Clase BackgroundRunner que ejecuta tareas en un hilo de fondo y entrega el resultado
+ * en el hilo de eventos de Swing mediante un CompletableFuture.
+ * Solo interesa el resultado de la última tarea enviada: al enviar una nueva, la que
+ * estuviera en marcha se interrumpe y las pendientes se descartan sin ejecutarse. El
+ * futuro de una tarea descartada queda cancelado, así que sus callbacks no tocan la
+ * interfaz.
+ */
+public class BackgroundRunner {
+
+    private final ExecutorService executor;
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Future<?> running;
+
+    /**
+     * Constructor de BackgroundRunner.
+     *
+     * @param threadName Nombre del hilo de fondo.
+     */
+    public BackgroundRunner(String threadName) {
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, threadName);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Envía una tarea, descartando las anteriores que no hayan terminado.
+     * El futuro devuelto se completa en el hilo de eventos de Swing, por lo que sus
+     * callbacks pueden actualizar la interfaz directamente. Cancelar el futuro equivale
+     * a llamar a {@link #cancel()}.
+     *
+     * @param <T> Tipo del resultado.
+     * @param task Tarea a ejecutar en segundo plano.
+     * @return Futuro con el resultado.
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        long id = generation.incrementAndGet();
+        cancelRunning();
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        running = executor.submit(() -> {
+            if (!isCurrent(id)) {
+                deliver(id, result, null, null);
+                return;
+            }
+            try {
+                deliver(id, result, task.call(), null);
+            } catch (Throwable ex) {
+                deliver(id, result, null, ex);
+            }
+        });
+        result.whenComplete((value, ex) -> {
+            if (result.isCancelled() && isCurrent(id)) {
+                cancel();
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Cancela la tarea en marcha y descarta las pendientes.
+     */
+    public void cancel() {
+        generation.incrementAndGet();
+        cancelRunning();
+    }
+
+    /**
+     * Comprueba si una tarea sigue siendo la última enviada.
+     *
+     * @param id Generación de la tarea.
+     * @return true si no se ha enviado ni cancelado nada después.
+     */
+    private boolean isCurrent(long id) {
+        return generation.get() == id;
+    }
+
+    /**
+     * Interrumpe el hilo de la tarea en marcha, si la hay.
+     */
+    private void cancelRunning() {
+        Future<?> current = running;
+        if (current != null) {
+            current.cancel(true);
+        }
+    }
+
+    /**
+     * Completa el futuro en el hilo de eventos, o lo cancela si la tarea ya no es la
+     * última enviada.
+     */
+    private <T> void deliver(long id, CompletableFuture<T> result, T value, Throwable ex) {
+        SwingUtilities.invokeLater(() -> {
+            if (!isCurrent(id)) {
+                result.cancel(false);
+            } else if (ex != null) {
+                result.completeExceptionally(ex);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ * Detección de rostros por lotes sobre todas las imágenes de un directorio.
+ */
+package com.mycompany.dibuixets;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.Rect;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * Clase BatchFaceDetector que aplica {@link FaceDetector} a todas las imágenes de un
+ * directorio utilizando un grupo acotado de hilos, uno por núcleo disponible.
+ * Por cada imagen se escribe una copia con los rostros resaltados y un registro JSON
+ * ({@link DetectionRecord}) con los rectángulos detectados, ambos con nombres únicos derivados del fichero original.
+ */
+public class BatchFaceDetector {
+
+    private static final Logger logger = Logger.getLogger(BatchFaceDetector.class.getName());
+
+    /** Cada cuántas imágenes procesadas se informa del progreso. */
+    private static final int progressInterval = 100;
+
+    /**
+     * Interfaz para recibir el progreso del procesamiento por lotes.
+     */
+    public interface ProgressListener {
+        /**
+         * Se invoca cada vez que termina una imagen, desde el hilo trabajador que la procesó.
+         *
+         * @param done Imágenes terminadas hasta ahora.
+         * @param total Imágenes totales del lote.
+         * @param failed Imágenes que no se han podido procesar.
+         * @param imagesPerSecond Rendimiento medio desde el inicio del lote.
+         */
+        void onProgress(int done, int total, int failed, double imagesPerSecond);
+    }
+
+    private BatchFaceDetector() {
+    }
+
+    /**
+     * Procesa todas las imágenes del directorio de entrada informando del progreso en el log.
+     *
+     * @param inputDir Directorio con las imágenes a analizar.
+     * @param outputDir Directorio donde se escribirán los resultados.
+     * @return Número de imágenes procesadas correctamente.
+     * @throws InterruptedException Si se interrumpe el hilo mientras espera al lote.
+     */
+    public static int run(File inputDir, File outputDir) throws InterruptedException {
+        return run(inputDir, outputDir, new ProgressListener() {
+            @Override
+            public void onProgress(int done, int total, int failed, double imagesPerSecond) {
+                if (done % progressInterval == 0 || done == total) {
+                    logger.info(String.format("%d/%d imágenes (%d errores), %.1f imágenes/s",
+                            done, total, failed, imagesPerSecond));
+                }
+            }
+        });
+    }
+
+    /**
+     * Procesa todas las imágenes del directorio de entrada.
+     * Las imágenes se reparten entre tantos hilos como núcleos tenga la máquina y la cola
+     * de tareas pendientes está acotada, de modo que el hilo que envía las tareas se frena
+     * cuando los trabajadores no dan abasto.
+     *
+     * @param inputDir Directorio con las imágenes a analizar.
+     * @param outputDir Directorio donde se escribirán los resultados.
+     * @param listener Receptor del progreso.
+     * @return Número de imágenes procesadas correctamente.
+     * @throws InterruptedException Si se interrumpe el hilo mientras espera al lote.
+     */
+    public static int run(File inputDir, File outputDir, ProgressListener listener) throws InterruptedException {
+        OpenCVRuntime.ensureLoaded();
+        if (!outputDir.exists()) {
+            outputDir.mkdirs();
+        }
+
+        List<File> images = ImageFinder.getImageFiles(inputDir.getPath());
+        int total = images.size();
+        int workers = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+
+        AtomicInteger done = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        long start = System.nanoTime();
+
+        for (File image : images) {
+            executor.execute(() -> {
+                if (!processImage(image, outputDir)) {
+                    failed.incrementAndGet();
+                }
+                int finished = done.incrementAndGet();
+                double seconds = (System.nanoTime() - start) / 1e9;
+                listener.onProgress(finished, total, failed.get(), seconds > 0 ? finished / seconds : 0);
+            });
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        return done.get() - failed.get();
+    }
+
+    /**
+     * Detecta los rostros de una imagen y escribe sus resultados. El fichero se lee una
+     * sola vez: con los mismos bytes se calcula el hash y se decodifica la imagen.
+     *
+     * @param imageFile Imagen a procesar.
+     * @param outputDir Directorio de salida.
+     * @return true si la imagen se ha procesado correctamente.
+     */
+    private static boolean processImage(File imageFile, File outputDir) {
+        try (MatScope scope = new MatScope()) {
+            byte[] content = Files.readAllBytes(imageFile.toPath());
+            long t = Metrics.start();
+            MatOfByte encoded = scope.add(new MatOfByte(content));
+            Mat image = scope.add(Imgcodecs.imdecode(encoded, Imgcodecs.IMREAD_COLOR));
+            Metrics.stop(Metrics.Stage.DECODE, t);
+            if (image.empty()) {
+                logger.warning("No se ha podido leer la imagen: " + imageFile);
+                return false;
+            }
+            DetectionOptions options = DetectionOptions.downscaled();
+            Rect[] faces = FaceDetector.detect(image, options);
+
+            String baseName = getOutputBaseName(imageFile);
+            DetectionRecord record = new DetectionRecord(DetectionCache.sha256(content), options, faces);
+            Files.write(new File(outputDir, baseName + "_faces.json").toPath(),
+                    record.toJson().getBytes(StandardCharsets.UTF_8));
+
+            FaceDetector.annotate(image, faces);
+            t = Metrics.start();
+            boolean written = Imgcodecs.imwrite(new File(outputDir, baseName + "_faces.jpg").getAbsolutePath(), image);
+            Metrics.stop(Metrics.Stage.ENCODE, t);
+            Metrics.increment("batch.images");
+            return written;
+        } catch (Exception ex) {
+            logger.log(Level.SEVERE, "Error procesando " + imageFile, ex);
+            return false;
+        }
+    }
+
+    /**
+     * Obtiene el nombre base de los ficheros de salida de una imagen. Se conserva la
+     * extensión original para que "foto.jpg" y "foto.png" no se sobrescriban entre sí.
+     * Los puntos se cambian por '_'; si el nombre ya tenía algún '_' se añade además un
+     * resumen corto del nombre original, para que "a.b.jpg" y "a_b.jpg" no coincidan.
+     *
+     * @param imageFile Imagen de entrada.
+     * @return Nombre base único dentro del directorio de entrada.
+     */
+    static String getOutputBaseName(File imageFile) {
+        String name = imageFile.getName();
+        String baseName = name.replace('.', '_');
+        if (name.indexOf('_') >= 0) {
+            baseName += "_" + DetectionCache.sha256(name.getBytes(StandardCharsets.UTF_8)).substring(0, 8);
+        }
+        return baseName;
+    }
+
+    /**
+     * Punto de entrada para ejecutar el lote desde la línea de comandos.
+     *
+     * @param args Directorio de entrada y, opcionalmente, directorio de salida
+     *             (por defecto "images/output").
+     * @throws InterruptedException Si se interrumpe la ejecución.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        File inputDir = new File(args.length > 0 ? args[0] : "images");
+        File outputDir = new File(args.length > 1 ? args[1] : "images/output");
+        if (Metrics.isEnabled()) {
+            Metrics.startPeriodicLog(60, TimeUnit.SECONDS);
+        }
+        int processed = run(inputDir, outputDir);
+        logger.info("Imágenes procesadas: " + processed);
+        if (Metrics.isEnabled()) {
+            logger.info("metrics " + Metrics.toJson());
+        }
+    }
+}
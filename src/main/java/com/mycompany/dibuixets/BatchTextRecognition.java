@@ -0,0 +1,214 @@
+/**
+ * Reconocimiento de texto incremental sobre todas las imágenes de un directorio.
+ */
+package com.mycompany.dibuixets;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Clase BatchTextRecognition que reconoce el texto de todas las imágenes de un directorio
+ * y escribe, a medida que termina cada una, un fichero de texto por imagen y una línea
+ * en el índice "index.jsonl" del directorio de salida.
+ *
+ * Cada línea del índice guarda el hash del contenido de la imagen y los parámetros del
+ * OCR, de modo que al volver a ejecutar el lote se saltan las imágenes que no han
+ * cambiado. El texto se escribe en un fichero temporal que se renombra al terminar y la
+ * línea del índice se añade después, así que si el proceso se interrumpe basta con
+ * relanzarlo: las imágenes a medias se vuelven a procesar y las terminadas no.
+ */
+public class BatchTextRecognition {
+    private static final Logger logger = Logger.getLogger(BatchTextRecognition.class.getName());
+
+    /** Nombre del índice dentro del directorio de salida. */
+    static final String indexName = "index.jsonl";
+
+    private static final Pattern stringField = Pattern.compile("\"(\\w+)\":\"((?:[^\"\\\\]|\\\\.)*)\"");
+
+    private BatchTextRecognition() {
+    }
+
+    /**
+     * Procesa las imágenes nuevas o modificadas del directorio de entrada.
+     *
+     * @param inputDir Directorio con las imágenes.
+     * @param outputDir Directorio donde se escriben los textos y el índice.
+     * @param language Idiomas de Tesseract.
+     * @param pageSegMode Modo de segmentación de página.
+     * @return Número de imágenes procesadas en esta ejecución (sin contar las saltadas).
+     * @throws IOException Si no se puede abrir el índice.
+     * @throws InterruptedException Si se interrumpe el hilo mientras espera al lote.
+     */
+    public static int run(File inputDir, File outputDir, String language, int pageSegMode)
+            throws IOException, InterruptedException {
+        OpenCVRuntime.ensureLoaded();
+        if (!outputDir.exists()) {
+            outputDir.mkdirs();
+        }
+        File indexFile = new File(outputDir, indexName);
+        Map<String, String> done = readIndex(indexFile);
+        String params = language + "|" + pageSegMode;
+
+        List<File> images = ImageFinder.getImageFiles(inputDir.getPath());
+        int workers = Runtime.getRuntime().availableProcessors();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(workers * 2), new ThreadPoolExecutor.CallerRunsPolicy());
+        AtomicInteger processed = new AtomicInteger();
+        AtomicInteger skipped = new AtomicInteger();
+
+        try (BufferedWriter index = new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(indexFile, true), StandardCharsets.UTF_8))) {
+            for (File image : images) {
+                executor.execute(() -> {
+                    try {
+                        String hash = DetectionCache.sha256(image);
+                        File textFile = new File(outputDir, BatchFaceDetector.getOutputBaseName(image) + ".txt");
+                        if ((hash + "|" + params).equals(done.get(image.getName())) && textFile.exists()) {
+                            skipped.incrementAndGet();
+                            return;
+                        }
+
+                        String text = TextRecognition.recognizeText(image.getAbsolutePath(), language, pageSegMode);
+                        File tmp = new File(outputDir, textFile.getName() + ".tmp");
+                        Files.write(tmp.toPath(), text.getBytes(StandardCharsets.UTF_8));
+                        Files.move(tmp.toPath(), textFile.toPath(),
+                                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+                        String line = "{\"file\":\"" + escape(image.getName()) + "\",\"hash\":\"" + hash
+                                + "\",\"params\":\"" + escape(params) + "\",\"text\":\"" + escape(textFile.getName())
+                                + "\",\"chars\":" + text.length() + ",\"time\":\"" + Instant.now() + "\"}";
+                        synchronized (index) {
+                            index.write(line);
+                            index.newLine();
+                            index.flush();
+                        }
+                        int count = processed.incrementAndGet();
+                        logger.info(String.format("%d imágenes reconocidas (%d sin cambios): %s",
+                                count, skipped.get(), image.getName()));
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    } catch (Exception ex) {
+                        logger.log(Level.SEVERE, "Error reconociendo " + image, ex);
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        }
+        logger.info(String.format("Lote terminado: %d reconocidas, %d sin cambios", processed.get(), skipped.get()));
+        return processed.get();
+    }
+
+    /**
+     * Lee el índice de ejecuciones anteriores. Si una imagen aparece varias veces manda la
+     * última línea; las líneas incompletas (por ejemplo por un corte) se ignoran.
+     *
+     * @param indexFile Fichero de índice.
+     * @return Mapa de nombre de imagen a "hash|parámetros".
+     * @throws IOException Si no se puede leer el índice.
+     */
+    static Map<String, String> readIndex(File indexFile) throws IOException {
+        Map<String, String> result = new HashMap<>();
+        if (!indexFile.exists()) {
+            return result;
+        }
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                new FileInputStream(indexFile), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                if (!line.endsWith("}")) {
+                    continue;
+                }
+                Map<String, String> fields = new HashMap<>();
+                Matcher matcher = stringField.matcher(line);
+                while (matcher.find()) {
+                    fields.put(matcher.group(1), unescape(matcher.group(2)));
+                }
+                if (fields.containsKey("file") && fields.containsKey("hash") && fields.containsKey("params")) {
+                    result.put(fields.get("file"), fields.get("hash") + "|" + fields.get("params"));
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Escapa un texto para incluirlo entre comillas en JSON.
+     *
+     * @param value Texto original.
+     * @return Texto escapado.
+     */
+    static String escape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Deshace el escapado de {@link #escape(String)}.
+     *
+     * @param value Texto escapado.
+     * @return Texto original.
+     */
+    static String unescape(String value) {
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                if (next == 'u' && i + 4 < value.length()) {
+                    sb.append((char) Integer.parseInt(value.substring(i + 1, i + 5), 16));
+                    i += 4;
+                } else {
+                    sb.append(next);
+                }
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Punto de entrada para ejecutar el lote desde la línea de comandos.
+     *
+     * @param args Directorio de entrada, opcionalmente directorio de salida (por defecto
+     *             "SavedText/batch") e idiomas de Tesseract (por defecto "eng").
+     * @throws Exception Si falla la ejecución.
+     */
+    public static void main(String[] args) throws Exception {
+        File inputDir = new File(args.length > 0 ? args[0] : "images");
+        File outputDir = new File(args.length > 1 ? args[1] : "SavedText/batch");
+        String language = args.length > 2 ? args[2] : TesseractPool.DEFAULT_LANGUAGE;
+        run(inputDir, outputDir, language, TesseractPool.DEFAULT_PAGE_SEG_MODE);
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Detección en varias etapas: un clasificador principal sobre toda la imagen y
+ * clasificadores secundarios solo dentro de sus resultados.
+ */
+package com.mycompany.dibuixets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Clase CascadePipeline que ejecuta el clasificador principal una sola vez sobre la imagen
+ * completa y, dentro de cada región encontrada, los clasificadores secundarios
+ * (por ejemplo ojos o sonrisa dentro de cada rostro). Las regiones se recorren como
+ * submatrices de la imagen ya ecualizada, sin copiar píxeles.
+ */
+public class CascadePipeline {
+
+    /** Tamaño mínimo de las detecciones secundarias respecto a la altura de la región. */
+    private static final double secondaryMinSizeRatio = 0.1;
+
+    /** Tamaño mínimo de las detecciones principales respecto a la altura de la imagen. */
+    private static final double primaryMinSizeRatio = 0.2;
+
+    private final String primary;
+    private final List<String> secondaries;
+
+    /**
+     * Constructor de CascadePipeline.
+     *
+     * @param primary Clasificador que se ejecuta sobre la imagen completa.
+     * @param secondaries Clasificadores que se ejecutan dentro de cada detección principal.
+     */
+    public CascadePipeline(String primary, String... secondaries) {
+        this.primary = primary;
+        this.secondaries = Collections.unmodifiableList(Arrays.asList(secondaries.clone()));
+    }
+
+    /**
+     * Crea el pipeline por defecto: rostros frontales y, dentro de ellos, ojos y sonrisas.
+     *
+     * @return Pipeline de rostros con ojos y sonrisa.
+     */
+    public static CascadePipeline facesWithEyesAndSmile() {
+        return new CascadePipeline(CascadeRegistry.FRONTAL_FACE,
+                "haarcascade_eye.xml", "haarcascade_smile.xml");
+    }
+
+    /**
+     * Ejecuta el pipeline sobre una imagen.
+     *
+     * @param image Imagen en color (BGR) o en escala de grises.
+     * @return Detecciones principales, cada una con sus detecciones secundarias.
+     */
+    public List<DetectionNode> detect(Mat image) {
+        List<DetectionNode> result = new ArrayList<>();
+        try (MatScope scope = new MatScope()) {
+            Mat grayFrame = scope.add(FaceDetector.toEqualizedGray(image));
+
+            DetectionOptions primaryOptions = new DetectionOptions()
+                    .setCascade(primary).setMinSizeRatio(primaryMinSizeRatio);
+            for (Rect region : FaceDetector.detectGray(grayFrame, primaryOptions)) {
+                DetectionNode node = new DetectionNode(primary, region);
+                Mat roi = scope.add(grayFrame.submat(region));
+                for (String secondary : secondaries) {
+                    DetectionOptions secondaryOptions = new DetectionOptions()
+                            .setCascade(secondary).setMinSizeRatio(secondaryMinSizeRatio);
+                    for (Rect inner : FaceDetector.detectGray(roi, secondaryOptions)) {
+                        // Pasar de coordenadas de la región a coordenadas de la imagen completa
+                        Rect absolute = new Rect(inner.x + region.x, inner.y + region.y, inner.width, inner.height);
+                        node.addChild(new DetectionNode(secondary, absolute));
+                    }
+                }
+                result.add(node);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Dibuja el árbol de detecciones: las principales con el color de {@link FaceDetector}
+     * y las secundarias con un trazo más fino.
+     *
+     * @param image Imagen sobre la que se dibuja.
+     * @param detections Detecciones devueltas por {@link #detect(Mat)}.
+     */
+    public static void annotate(Mat image, List<DetectionNode> detections) {
+        for (DetectionNode node : detections) {
+            Imgproc.rectangle(image, node.getRect(), new Scalar(255, 123, 45), 3);
+            for (DetectionNode child : node.getChildren()) {
+                Imgproc.rectangle(image, child.getRect(), new Scalar(45, 200, 255), 2);
+            }
+        }
+    }
+
+    /**
+     * Obtiene el clasificador principal.
+     * @return Nombre del fichero del clasificador principal.
+     */
+    public String getPrimary() {
+        return primary;
+    }
+
+    /**
+     * Obtiene los clasificadores secundarios.
+     * @return Lista inmutable de nombres de clasificadores secundarios.
+     */
+    public List<String> getSecondaries() {
+        return secondaries;
+    }
+}
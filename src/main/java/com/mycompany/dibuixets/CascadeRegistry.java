@@ -0,0 +1,94 @@
+/**
+ * Registro de clasificadores Haar que evita volver a parsear los XML de la carpeta "data"
+ * en cada detección.
+ */
+package com.mycompany.dibuixets;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.opencv.objdetect.CascadeClassifier;
+
+/**
+ * Clase CascadeRegistry que mantiene los clasificadores en cascada ya cargados.
+ * Los CascadeClassifier de OpenCV no son seguros entre hilos, por lo que cada hilo
+ * trabajador recibe su propia instancia, que se carga una sola vez y se reutiliza
+ * en todas las detecciones posteriores de ese hilo.
+ */
+public class CascadeRegistry {
+
+    /** Carpeta donde se encuentran los ficheros XML de los clasificadores. */
+    private static final String cascadesPath = "data";
+
+    /** Clasificador de rostros frontales utilizado por defecto. */
+    public static final String FRONTAL_FACE = "haarcascade_frontalface_alt2.xml";
+
+    /** Nombres de los clasificadores disponibles, calculados una sola vez. */
+    private static volatile List<String> available;
+
+    /** Clasificadores ya cargados por cada hilo, indexados por nombre de fichero. */
+    private static final ThreadLocal<Map<String, CascadeClassifier>> classifiers =
+            ThreadLocal.withInitial(HashMap::new);
+
+    private CascadeRegistry() {
+    }
+
+    /**
+     * Obtiene el clasificador indicado para el hilo actual, cargándolo la primera vez
+     * que este hilo lo solicita.
+     *
+     * @param name Nombre del fichero del clasificador dentro de "data" (por ejemplo {@link #FRONTAL_FACE}).
+     * @return Clasificador listo para usar en el hilo actual.
+     * @throws IllegalArgumentException Si el clasificador no existe o no se puede cargar.
+     */
+    public static CascadeClassifier get(String name) {
+        Map<String, CascadeClassifier> loaded = classifiers.get();
+        CascadeClassifier classifier = loaded.get(name);
+        if (classifier == null) {
+            if (!getAvailableCascades().contains(name)) {
+                throw new IllegalArgumentException("No existe el clasificador: " + name);
+            }
+            classifier = new CascadeClassifier();
+            if (!classifier.load(new File(cascadesPath, name).getPath()) || classifier.empty()) {
+                throw new IllegalArgumentException("No se ha podido cargar el clasificador: " + name);
+            }
+            loaded.put(name, classifier);
+        }
+        return classifier;
+    }
+
+    /**
+     * Obtiene los nombres de los clasificadores disponibles en la carpeta "data".
+     * La carpeta solo se recorre la primera vez.
+     *
+     * @return Lista inmutable con los nombres de los ficheros de clasificadores.
+     */
+    public static List<String> getAvailableCascades() {
+        List<String> result = available;
+        if (result == null) {
+            synchronized (CascadeRegistry.class) {
+                result = available;
+                if (result == null) {
+                    File[] files = new File(cascadesPath).listFiles(new FilenameFilter() {
+                        @Override
+                        public boolean accept(File dir, String name) {
+                            return name.startsWith("haarcascade_") && name.endsWith(".xml");
+                        }
+                    });
+                    String[] names = new String[files != null ? files.length : 0];
+                    for (int i = 0; i < names.length; i++) {
+                        names[i] = files[i].getName();
+                    }
+                    Arrays.sort(names);
+                    result = Collections.unmodifiableList(Arrays.asList(names));
+                    available = result;
+                }
+            }
+        }
+        return result;
+    }
+}
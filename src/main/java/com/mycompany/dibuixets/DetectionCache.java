@@ -0,0 +1,302 @@
+/**
+ * Caché de resultados de detección indexada por el contenido de la imagen.
+ */
+package com.mycompany.dibuixets;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.opencv.core.Mat;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * Clase DetectionCache que guarda cada resultado como un fichero JSON en "cache/detections",
+ * con nombre formado por el hash SHA-256 de la imagen y el de los parámetros.
+ * Repetir una detección sobre el mismo contenido con los mismos parámetros solo cuesta
+ * leer el registro. Las imágenes anotadas se generan únicamente cuando se piden.
+ * Los registros más recientes se mantienen además en memoria, y la carpeta se limita a
+ * un tamaño máximo eliminando primero los ficheros usados hace más tiempo.
+ */
+public class DetectionCache {
+    private static final Logger logger = Logger.getLogger(DetectionCache.class.getName());
+
+    /** Número máximo de registros que se mantienen en memoria. */
+    private static final int maxMemoryEntries = 512;
+
+    /** Tamaño máximo de la carpeta de caché en disco, incluidas las imágenes anotadas. */
+    private static final long defaultMaxDiskBytes = 256L * 1024 * 1024;
+
+    private static DetectionCache defaultCache;
+
+    private final File folder;
+    private final long maxDiskBytes;
+
+    /** Registros recientes, en orden de acceso, indexados por nombre de registro. */
+    private final Map<String, DetectionRecord> memory = new LinkedHashMap<String, DetectionRecord>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, DetectionRecord> eldest) {
+            return size() > maxMemoryEntries;
+        }
+    };
+
+    /** Hash de los ficheros ya leídos, indexado por ruta, tamaño y fecha de modificación. */
+    private final Map<String, String> fileHashes = new LinkedHashMap<String, String>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > maxMemoryEntries;
+        }
+    };
+
+    /**
+     * Constructor de DetectionCache.
+     *
+     * @param folder Carpeta donde se guardan los registros.
+     * @param maxDiskBytes Tamaño máximo de la carpeta en bytes.
+     */
+    public DetectionCache(File folder, long maxDiskBytes) {
+        this.folder = folder;
+        this.maxDiskBytes = maxDiskBytes;
+        if (!folder.exists()) {
+            folder.mkdirs();
+        }
+    }
+
+    /**
+     * Obtiene la caché compartida de la aplicación, en "cache/detections".
+     * @return Caché por defecto.
+     */
+    public static synchronized DetectionCache getDefault() {
+        if (defaultCache == null) {
+            defaultCache = new DetectionCache(new File("cache/detections"), defaultMaxDiskBytes);
+        }
+        return defaultCache;
+    }
+
+    /**
+     * Obtiene el resultado de la detección de una imagen, detectando solo si no estaba en caché.
+     *
+     * @param imageFile Imagen a analizar.
+     * @param options Clasificador y parámetros de la detección.
+     * @return Registro con los rectángulos detectados.
+     * @throws IOException Si no se puede leer la imagen.
+     */
+    public DetectionRecord getRecord(File imageFile, DetectionOptions options) throws IOException {
+        String hash = getContentHash(imageFile);
+        String key = getKey(hash, options);
+        DetectionRecord record = lookup(key);
+        if (record != null) {
+            Metrics.increment("detectionCache.hits");
+            return record;
+        }
+        Metrics.increment("detectionCache.misses");
+
+        try (MatScope scope = new MatScope()) {
+            long t = Metrics.start();
+            Mat image = scope.add(Imgcodecs.imread(imageFile.getAbsolutePath()));
+            Metrics.stop(Metrics.Stage.DECODE, t);
+            if (image.empty()) {
+                throw new IOException("No se ha podido leer la imagen: " + imageFile);
+            }
+            record = new DetectionRecord(hash, options, FaceDetector.detect(image, options));
+        }
+        store(key, record);
+        return record;
+    }
+
+    /**
+     * Obtiene la imagen con las detecciones resaltadas, generándola la primera vez que se pide.
+     *
+     * @param imageFile Imagen a analizar.
+     * @param options Clasificador y parámetros de la detección.
+     * @return Fichero JPEG con las detecciones dibujadas.
+     * @throws IOException Si no se puede leer o escribir la imagen.
+     */
+    public File getAnnotatedImage(File imageFile, DetectionOptions options) throws IOException {
+        DetectionRecord record = getRecord(imageFile, options);
+        File annotated = new File(folder, getKey(record.getHash(), options) + ".jpg");
+        if (annotated.exists()) {
+            annotated.setLastModified(System.currentTimeMillis());
+            return annotated;
+        }
+
+        try (MatScope scope = new MatScope()) {
+            long t = Metrics.start();
+            Mat image = scope.add(Imgcodecs.imread(imageFile.getAbsolutePath()));
+            Metrics.stop(Metrics.Stage.DECODE, t);
+            FaceDetector.annotate(image, record.getRects());
+            t = Metrics.start();
+            boolean written = Imgcodecs.imwrite(annotated.getAbsolutePath(), image);
+            Metrics.stop(Metrics.Stage.ENCODE, t);
+            if (!written) {
+                throw new IOException("No se ha podido escribir " + annotated);
+            }
+        }
+        evictIfNeeded();
+        return annotated;
+    }
+
+    /**
+     * Busca un registro primero en memoria y después en disco.
+     *
+     * @param key Nombre del registro.
+     * @return Registro encontrado o null si no existe.
+     */
+    private DetectionRecord lookup(String key) {
+        synchronized (memory) {
+            DetectionRecord record = memory.get(key);
+            if (record != null) {
+                return record;
+            }
+        }
+        File sidecar = new File(folder, key + ".json");
+        if (!sidecar.exists()) {
+            return null;
+        }
+        try {
+            DetectionRecord record = DetectionRecord.fromJson(
+                    new String(Files.readAllBytes(sidecar.toPath()), StandardCharsets.UTF_8));
+            sidecar.setLastModified(System.currentTimeMillis());
+            synchronized (memory) {
+                memory.put(key, record);
+            }
+            return record;
+        } catch (IOException | IllegalArgumentException ex) {
+            logger.log(Level.WARNING, "Registro de caché dañado: " + sidecar, ex);
+            sidecar.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Guarda un registro en memoria y en disco.
+     *
+     * @param key Nombre del registro.
+     * @param record Registro a guardar.
+     * @throws IOException Si no se puede escribir el fichero.
+     */
+    private void store(String key, DetectionRecord record) throws IOException {
+        synchronized (memory) {
+            memory.put(key, record);
+        }
+        Files.write(new File(folder, key + ".json").toPath(), record.toJson().getBytes(StandardCharsets.UTF_8));
+        evictIfNeeded();
+    }
+
+    /**
+     * Elimina los ficheros usados hace más tiempo hasta que la carpeta no supere el
+     * tamaño máximo.
+     */
+    private synchronized void evictIfNeeded() {
+        File[] files = folder.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxDiskBytes) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (File file : files) {
+            if (total <= maxDiskBytes * 0.8) {
+                break;
+            }
+            total -= file.length();
+            file.delete();
+        }
+    }
+
+    /**
+     * Calcula el hash SHA-256 del contenido de un fichero. El resultado se recuerda mientras
+     * no cambien la ruta, el tamaño ni la fecha de modificación del fichero.
+     *
+     * @param file Fichero a leer.
+     * @return Hash en hexadecimal.
+     * @throws IOException Si no se puede leer el fichero.
+     */
+    public String getContentHash(File file) throws IOException {
+        String fileKey = file.getAbsolutePath() + "|" + file.length() + "|" + file.lastModified();
+        synchronized (fileHashes) {
+            String hash = fileHashes.get(fileKey);
+            if (hash != null) {
+                return hash;
+            }
+        }
+        String hash = sha256(file);
+        synchronized (fileHashes) {
+            fileHashes.put(fileKey, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Calcula el hash SHA-256 del contenido de un fichero.
+     *
+     * @param file Fichero a leer.
+     * @return Hash en hexadecimal.
+     * @throws IOException Si no se puede leer el fichero.
+     */
+    static String sha256(File file) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file.toPath()), digest)) {
+            byte[] buffer = new byte[64 * 1024];
+            while (in.read(buffer) != -1) {
+                // El DigestInputStream actualiza el hash al leer
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Calcula el hash SHA-256 de un contenido ya leído en memoria.
+     *
+     * @param content Bytes del fichero.
+     * @return Hash en hexadecimal.
+     */
+    static String sha256(byte[] content) {
+        return toHex(newDigest().digest(content));
+    }
+
+    /**
+     * Construye el nombre de un registro a partir del hash de la imagen y de los parámetros.
+     *
+     * @param contentHash Hash del contenido de la imagen.
+     * @param options Opciones de la detección.
+     * @return Nombre del registro, sin extensión.
+     */
+    static String getKey(String contentHash, DetectionOptions options) {
+        String params = options.getCascade() + "|" + options.getScaleFactor() + "|" + options.getMinNeighbors()
+                + "|" + options.getMinSizeRatio() + "|" + options.getMaxDimension();
+        byte[] paramsHash = newDigest().digest(params.getBytes(StandardCharsets.UTF_8));
+        return contentHash + "_" + toHex(paramsHash).substring(0, 12);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
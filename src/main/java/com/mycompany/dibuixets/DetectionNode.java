@@ -0,0 +1,68 @@
+/**
+ * Nodo del árbol de resultados de una detección en varias etapas.
+ */
+package com.mycompany.dibuixets;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.opencv.core.Rect;
+
+/**
+ * Clase DetectionNode que representa un objeto detectado por un clasificador junto con
+ * los objetos que los clasificadores secundarios han encontrado dentro de él.
+ * Los rectángulos siempre están en coordenadas de la imagen completa.
+ */
+public class DetectionNode {
+    private final String cascade;
+    private final Rect rect;
+    private final List<DetectionNode> children = new ArrayList<>();
+
+    /**
+     * Constructor de DetectionNode.
+     *
+     * @param cascade Nombre del clasificador que produjo la detección.
+     * @param rect Rectángulo detectado en coordenadas de la imagen completa.
+     */
+    public DetectionNode(String cascade, Rect rect) {
+        this.cascade = cascade;
+        this.rect = rect;
+    }
+
+    /**
+     * Obtiene el nombre del clasificador que produjo la detección.
+     * @return Nombre del fichero del clasificador.
+     */
+    public String getCascade() {
+        return cascade;
+    }
+
+    /**
+     * Obtiene el rectángulo detectado.
+     * @return Rectángulo en coordenadas de la imagen completa.
+     */
+    public Rect getRect() {
+        return rect;
+    }
+
+    /**
+     * Obtiene las detecciones encontradas dentro de esta.
+     * @return Lista inmutable de detecciones hijas.
+     */
+    public List<DetectionNode> getChildren() {
+        return Collections.unmodifiableList(children);
+    }
+
+    /**
+     * Añade una detección hija.
+     * @param child Detección encontrada dentro de esta.
+     */
+    void addChild(DetectionNode child) {
+        children.add(child);
+    }
+
+    @Override
+    public String toString() {
+        return cascade + rect + (children.isEmpty() ? "" : children.toString());
+    }
+}
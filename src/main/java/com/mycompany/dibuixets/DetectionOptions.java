@@ -0,0 +1,122 @@
+/**
+ * Parámetros de una detección con clasificadores en cascada.
+ */
+package com.mycompany.dibuixets;
+
+/**
+ * Clase DetectionOptions que agrupa el clasificador y los parámetros que se pasan a
+ * detectMultiScale, además del tamaño de la copia reducida sobre la que se trabaja.
+ * Los métodos "set" devuelven la propia instancia para poder encadenarlos.
+ */
+public class DetectionOptions {
+
+    /** Lado mayor de la copia de trabajo usado por defecto en imágenes grandes. */
+    public static final int DEFAULT_WORKING_SIZE = 1280;
+
+    private String cascade = CascadeRegistry.FRONTAL_FACE;
+    private double scaleFactor = 1.1;
+    private int minNeighbors = 2;
+    private double minSizeRatio = 0.2;
+    private int maxDimension = 0;
+
+    /**
+     * Crea unas opciones que reducen la imagen hasta {@link #DEFAULT_WORKING_SIZE}
+     * antes de detectar.
+     *
+     * @return Opciones con reducción previa.
+     */
+    public static DetectionOptions downscaled() {
+        return new DetectionOptions().setMaxDimension(DEFAULT_WORKING_SIZE);
+    }
+
+    /**
+     * Obtiene el clasificador a utilizar.
+     * @return Nombre del fichero del clasificador dentro de "data".
+     */
+    public String getCascade() {
+        return cascade;
+    }
+
+    /**
+     * Establece el clasificador a utilizar.
+     * @param cascade Nombre del fichero del clasificador dentro de "data".
+     * @return Esta misma instancia.
+     */
+    public DetectionOptions setCascade(String cascade) {
+        this.cascade = cascade;
+        return this;
+    }
+
+    /**
+     * Obtiene el factor de escala entre pasadas de detectMultiScale.
+     * @return Factor de escala.
+     */
+    public double getScaleFactor() {
+        return scaleFactor;
+    }
+
+    /**
+     * Establece el factor de escala entre pasadas de detectMultiScale.
+     * @param scaleFactor Factor de escala, mayor que 1.
+     * @return Esta misma instancia.
+     */
+    public DetectionOptions setScaleFactor(double scaleFactor) {
+        this.scaleFactor = scaleFactor;
+        return this;
+    }
+
+    /**
+     * Obtiene el número de vecinos necesario para aceptar una detección.
+     * @return Número mínimo de vecinos.
+     */
+    public int getMinNeighbors() {
+        return minNeighbors;
+    }
+
+    /**
+     * Establece el número de vecinos necesario para aceptar una detección.
+     * @param minNeighbors Número mínimo de vecinos.
+     * @return Esta misma instancia.
+     */
+    public DetectionOptions setMinNeighbors(int minNeighbors) {
+        this.minNeighbors = minNeighbors;
+        return this;
+    }
+
+    /**
+     * Obtiene el tamaño mínimo de los objetos respecto a la altura de la imagen.
+     * @return Proporción entre 0 y 1.
+     */
+    public double getMinSizeRatio() {
+        return minSizeRatio;
+    }
+
+    /**
+     * Establece el tamaño mínimo de los objetos respecto a la altura de la imagen.
+     * @param minSizeRatio Proporción entre 0 y 1.
+     * @return Esta misma instancia.
+     */
+    public DetectionOptions setMinSizeRatio(double minSizeRatio) {
+        this.minSizeRatio = minSizeRatio;
+        return this;
+    }
+
+    /**
+     * Obtiene el lado mayor de la copia de trabajo.
+     * @return Tamaño en píxeles, o 0 si se trabaja a resolución completa.
+     */
+    public int getMaxDimension() {
+        return maxDimension;
+    }
+
+    /**
+     * Establece el lado mayor de la copia de trabajo. Las imágenes más grandes se reducen
+     * antes de detectar y los resultados se devuelven en coordenadas originales.
+     * @param maxDimension Tamaño en píxeles, o 0 para trabajar a resolución completa.
+     * @return Esta misma instancia.
+     */
+    public DetectionOptions setMaxDimension(int maxDimension) {
+        this.maxDimension = maxDimension;
+        return this;
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Resultado de una detección guardado como fichero JSON junto a la caché.
+ */
+package com.mycompany.dibuixets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.opencv.core.Rect;
+
+/**
+ * Clase DetectionRecord que guarda los rectángulos detectados junto con el clasificador,
+ * los parámetros y el hash del contenido de la imagen de entrada.
+ * Se serializa a un JSON compacto de una sola línea que solo escribe y lee esta clase.
+ */
+public class DetectionRecord {
+    private static final Pattern rectPattern = Pattern.compile("\\[(\\d+),(\\d+),(\\d+),(\\d+)\\]");
+
+    private final String hash;
+    private final String cascade;
+    private final double scaleFactor;
+    private final int minNeighbors;
+    private final double minSizeRatio;
+    private final int maxDimension;
+    private final Rect[] rects;
+
+    /**
+     * Constructor de DetectionRecord.
+     *
+     * @param hash Hash SHA-256 del contenido de la imagen.
+     * @param options Opciones con las que se ha detectado.
+     * @param rects Rectángulos detectados en coordenadas de la imagen original.
+     */
+    public DetectionRecord(String hash, DetectionOptions options, Rect[] rects) {
+        this(hash, options.getCascade(), options.getScaleFactor(), options.getMinNeighbors(),
+                options.getMinSizeRatio(), options.getMaxDimension(), rects);
+    }
+
+    private DetectionRecord(String hash, String cascade, double scaleFactor, int minNeighbors,
+            double minSizeRatio, int maxDimension, Rect[] rects) {
+        this.hash = hash;
+        this.cascade = cascade;
+        this.scaleFactor = scaleFactor;
+        this.minNeighbors = minNeighbors;
+        this.minSizeRatio = minSizeRatio;
+        this.maxDimension = maxDimension;
+        this.rects = rects;
+    }
+
+    /**
+     * Obtiene el hash del contenido de la imagen.
+     * @return Hash SHA-256 en hexadecimal.
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Obtiene los rectángulos detectados.
+     * @return Copia de los rectángulos.
+     */
+    public Rect[] getRects() {
+        return rects.clone();
+    }
+
+    /**
+     * Obtiene las opciones con las que se ha detectado.
+     * @return Nuevas opciones equivalentes a las originales.
+     */
+    public DetectionOptions getOptions() {
+        return new DetectionOptions().setCascade(cascade).setScaleFactor(scaleFactor)
+                .setMinNeighbors(minNeighbors).setMinSizeRatio(minSizeRatio).setMaxDimension(maxDimension);
+    }
+
+    /**
+     * Convierte el registro a JSON.
+     * @return Texto JSON de una sola línea.
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"hash\":\"").append(hash)
+          .append("\",\"cascade\":\"").append(cascade)
+          .append("\",\"scaleFactor\":").append(String.format(Locale.ROOT, "%s", scaleFactor))
+          .append(",\"minNeighbors\":").append(minNeighbors)
+          .append(",\"minSizeRatio\":").append(String.format(Locale.ROOT, "%s", minSizeRatio))
+          .append(",\"maxDimension\":").append(maxDimension)
+          .append(",\"rects\":[");
+        for (int i = 0; i < rects.length; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('[').append(rects[i].x).append(',').append(rects[i].y).append(',')
+              .append(rects[i].width).append(',').append(rects[i].height).append(']');
+        }
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * Lee un registro escrito con {@link #toJson()}.
+     *
+     * @param json Texto JSON.
+     * @return Registro leído.
+     * @throws IllegalArgumentException Si falta algún campo.
+     */
+    public static DetectionRecord fromJson(String json) {
+        List<Rect> rects = new ArrayList<>();
+        int rectsStart = json.indexOf("\"rects\":");
+        if (rectsStart < 0) {
+            throw new IllegalArgumentException("Registro de detección sin rectángulos");
+        }
+        Matcher matcher = rectPattern.matcher(json.substring(rectsStart));
+        while (matcher.find()) {
+            rects.add(new Rect(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)),
+                    Integer.parseInt(matcher.group(3)), Integer.parseInt(matcher.group(4))));
+        }
+        return new DetectionRecord(field(json, "hash"), field(json, "cascade"),
+                Double.parseDouble(field(json, "scaleFactor")), Integer.parseInt(field(json, "minNeighbors")),
+                Double.parseDouble(field(json, "minSizeRatio")), Integer.parseInt(field(json, "maxDimension")),
+                rects.toArray(new Rect[0]));
+    }
+
+    /**
+     * Extrae el valor de un campo simple (texto o número) del JSON.
+     *
+     * @param json Texto JSON.
+     * @param name Nombre del campo.
+     * @return Valor del campo sin comillas.
+     */
+    private static String field(String json, String name) {
+        Matcher matcher = Pattern.compile("\"" + name + "\":\"?([^\",}]*)").matcher(json);
+        if (!matcher.find()) {
+            throw new IllegalArgumentException("Falta el campo " + name);
+        }
+        return matcher.group(1);
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ * Operación de dibujo grabada que se puede volver a aplicar sobre cualquier imagen.
+ */
+package com.mycompany.dibuixets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Clase DrawingCommand que describe una operación de dibujo: un trazo a mano alzada o
+ * de borrador (como una polilínea con todos los puntos del arrastre), un rectángulo o
+ * un círculo. Las coordenadas están en píxeles de la imagen sobre la que se grabó; al
+ * aplicarla se pueden escalar a otra resolución.
+ */
+public class DrawingCommand {
+    private static final Pattern pointPattern = Pattern.compile("\\[(-?\\d+),(-?\\d+)\\]");
+    private static final Pattern colorPattern = Pattern.compile("\"color\":\\[(\\d+),(\\d+),(\\d+)\\]");
+
+    /** Tipos de operación. */
+    public enum Type {
+        /** Trazo a mano alzada con el color actual. */
+        STROKE,
+        /** Trazo de borrador: restaura los píxeles originales de la imagen. */
+        ERASE,
+        /** Rectángulo entre el primer y el segundo punto. */
+        RECTANGLE,
+        /** Círculo con centro en el primer punto que pasa por el segundo. */
+        CIRCLE
+    }
+
+    private final Type type;
+    private final int[] bgr;
+    private final int thickness;
+    private final List<Point> points = new ArrayList<>();
+
+    /**
+     * Constructor de DrawingCommand.
+     *
+     * @param type Tipo de operación.
+     * @param bgr Color en orden azul, verde, rojo (se ignora en el borrador).
+     * @param thickness Grosor del trazo en píxeles de la imagen original.
+     */
+    public DrawingCommand(Type type, int[] bgr, int thickness) {
+        this.type = type;
+        this.bgr = bgr.clone();
+        this.thickness = thickness;
+    }
+
+    /**
+     * Añade un punto a la operación. Los puntos repetidos seguidos se descartan, así que
+     * los eventos de arrastre que no mueven el ratón no hacen crecer la polilínea.
+     *
+     * @param x Coordenada x en la imagen.
+     * @param y Coordenada y en la imagen.
+     */
+    public void addPoint(int x, int y) {
+        if (!points.isEmpty()) {
+            Point last = points.get(points.size() - 1);
+            if (last.x == x && last.y == y && type != Type.RECTANGLE && type != Type.CIRCLE) {
+                return;
+            }
+        }
+        points.add(new Point(x, y));
+    }
+
+    /**
+     * Indica si la operación dibuja algo: los trazos necesitan al menos un punto (un
+     * trazo de un solo punto es un punto del grosor del pincel) y las figuras sus dos
+     * puntos.
+     *
+     * @return true si la operación pinta algún píxel.
+     */
+    public boolean isComplete() {
+        return type == Type.STROKE || type == Type.ERASE ? !points.isEmpty() : points.size() >= 2;
+    }
+
+    /**
+     * Aplica la operación sobre una imagen.
+     *
+     * @param target Imagen sobre la que se dibuja.
+     * @param background Imagen original, de donde restaura los píxeles el borrador.
+     * @param scaleX Escala horizontal de la imagen original a la de destino.
+     * @param scaleY Escala vertical de la imagen original a la de destino.
+     * @return Zona de la imagen de destino modificada.
+     */
+    public Rect apply(Mat target, Mat background, double scaleX, double scaleY) {
+        int scaledThickness = Math.max(1, (int) Math.round(thickness * Math.sqrt(scaleX * scaleY)));
+        List<Point> scaled = new ArrayList<>(points.size());
+        for (Point p : points) {
+            scaled.add(new Point(Math.round(p.x * scaleX), Math.round(p.y * scaleY)));
+        }
+        Scalar color = new Scalar(bgr[0], bgr[1], bgr[2]);
+        if (scaled.size() == 1) {
+            // Un clic sin movimiento se dibuja como un segmento de longitud cero
+            scaled.add(scaled.get(0));
+        }
+        switch (type) {
+            case STROKE:
+                for (int i = 1; i < scaled.size(); i++) {
+                    Imgproc.line(target, scaled.get(i - 1), scaled.get(i), color, scaledThickness);
+                }
+                break;
+            case ERASE:
+                for (int i = 1; i < scaled.size(); i++) {
+                    erase(target, background, scaled.get(i - 1), scaled.get(i), scaledThickness);
+                }
+                break;
+            case RECTANGLE:
+                Imgproc.rectangle(target, scaled.get(0), scaled.get(1), color, scaledThickness);
+                break;
+            case CIRCLE:
+                Point center = scaled.get(0);
+                int radius = (int) Math.hypot(scaled.get(1).x - center.x, scaled.get(1).y - center.y);
+                Imgproc.circle(target, center, radius, color, scaledThickness);
+                break;
+        }
+        return getBounds(scaled, scaledThickness);
+    }
+
+    /**
+     * Borra un segmento restaurando los píxeles originales que quedan bajo el pincel.
+     * Se dibuja el segmento en una máscara del tamaño de su rectángulo y se copia el
+     * fondo a través de ella, así que solo se trabaja sobre la zona del trazo.
+     *
+     * @param target Imagen que se está editando.
+     * @param background Imagen original, del mismo tamaño que target.
+     * @param from Punto inicial del segmento.
+     * @param to Punto final del segmento.
+     * @param thickness Grosor del pincel.
+     * @return Zona de la imagen restaurada, o null si el segmento queda fuera.
+     */
+    static Rect erase(Mat target, Mat background, Point from, Point to, int thickness) {
+        int margin = thickness + 1;
+        int x = (int) Math.max(0, Math.min(from.x, to.x) - margin);
+        int y = (int) Math.max(0, Math.min(from.y, to.y) - margin);
+        int right = (int) Math.min(target.width(), Math.max(from.x, to.x) + margin + 1);
+        int bottom = (int) Math.min(target.height(), Math.max(from.y, to.y) + margin + 1);
+        if (right <= x || bottom <= y) {
+            return null;
+        }
+        Rect region = new Rect(x, y, right - x, bottom - y);
+        try (MatScope scope = new MatScope()) {
+            Mat mask = scope.add(Mat.zeros(region.height, region.width, CvType.CV_8UC1));
+            Imgproc.line(mask, new Point(from.x - x, from.y - y), new Point(to.x - x, to.y - y),
+                    new Scalar(255), thickness);
+            Mat source = scope.add(background.submat(region));
+            Mat destination = scope.add(target.submat(region));
+            source.copyTo(destination, mask);
+        }
+        return region;
+    }
+
+    /**
+     * Calcula la zona que ocupa la operación una vez escalada.
+     */
+    private Rect getBounds(List<Point> scaled, int scaledThickness) {
+        double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+        if (type == Type.CIRCLE) {
+            Point center = scaled.get(0);
+            double radius = Math.hypot(scaled.get(1).x - center.x, scaled.get(1).y - center.y);
+            minX = center.x - radius;
+            minY = center.y - radius;
+            maxX = center.x + radius;
+            maxY = center.y + radius;
+        } else {
+            for (Point p : scaled) {
+                minX = Math.min(minX, p.x);
+                minY = Math.min(minY, p.y);
+                maxX = Math.max(maxX, p.x);
+                maxY = Math.max(maxY, p.y);
+            }
+        }
+        int margin = scaledThickness + 1;
+        return new Rect((int) minX - margin, (int) minY - margin,
+                (int) (maxX - minX) + 2 * margin + 1, (int) (maxY - minY) + 2 * margin + 1);
+    }
+
+    /**
+     * Obtiene el tipo de la operación.
+     * @return Tipo de operación.
+     */
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * Obtiene el número de puntos de la operación.
+     * @return Número de puntos.
+     */
+    public int getPointCount() {
+        return points.size();
+    }
+
+    /**
+     * Convierte la operación a JSON.
+     * @return Texto JSON de una sola línea.
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"type\":\"").append(type)
+          .append("\",\"color\":[").append(bgr[0]).append(',').append(bgr[1]).append(',').append(bgr[2])
+          .append("],\"thickness\":").append(thickness)
+          .append(",\"points\":[");
+        for (int i = 0; i < points.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append('[').append((int) points.get(i).x).append(',').append((int) points.get(i).y).append(']');
+        }
+        return sb.append("]}").toString();
+    }
+
+    /**
+     * Lee una operación escrita con {@link #toJson()}.
+     *
+     * @param json Texto JSON.
+     * @return Operación leída.
+     * @throws IllegalArgumentException Si falta algún campo.
+     */
+    public static DrawingCommand fromJson(String json) {
+        Matcher type = Pattern.compile("\"type\":\"(\\w+)\"").matcher(json);
+        Matcher color = colorPattern.matcher(json);
+        Matcher thickness = Pattern.compile("\"thickness\":(\\d+)").matcher(json);
+        int pointsStart = json.indexOf("\"points\":");
+        if (!type.find() || !color.find() || !thickness.find() || pointsStart < 0) {
+            throw new IllegalArgumentException("Operación de dibujo incompleta: " + json);
+        }
+        DrawingCommand command = new DrawingCommand(Type.valueOf(type.group(1)),
+                new int[] {Integer.parseInt(color.group(1)), Integer.parseInt(color.group(2)),
+                    Integer.parseInt(color.group(3))},
+                Integer.parseInt(thickness.group(1)));
+        Matcher point = pointPattern.matcher(json.substring(pointsStart));
+        while (point.find()) {
+            command.points.add(new Point(Integer.parseInt(point.group(1)), Integer.parseInt(point.group(2))));
+        }
+        return command;
+    }
+}
@@ -0,0 +1,227 @@
+/**
+ * Registro de las operaciones de dibujo de una sesión.
+ */
+package com.mycompany.dibuixets;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * Clase DrawingLog que guarda las operaciones de dibujo aplicadas a una imagen, en
+ * orden, para poder reproducirlas sin interfaz sobre cualquier otra imagen: por ejemplo
+ * anotar una vista previa y aplicar las mismas anotaciones a los originales a resolución
+ * completa. Sigue al historial de deshacer: las operaciones deshechas no se reproducen.
+ *
+ * Se guarda en formato JSONL: una primera línea con el tamaño de la imagen original y
+ * una línea por operación.
+ */
+public class DrawingLog {
+    private static final Logger logger = Logger.getLogger(DrawingLog.class.getName());
+    private static final Pattern sizePattern = Pattern.compile("\"width\":(\\d+),\"height\":(\\d+)");
+
+    private final int width;
+    private final int height;
+    private final List<DrawingCommand> commands = new ArrayList<>();
+    private final Deque<DrawingCommand> undone = new ArrayDeque<>();
+    private DrawingCommand current;
+
+    /**
+     * Constructor de DrawingLog.
+     *
+     * @param width Ancho de la imagen sobre la que se dibuja.
+     * @param height Alto de la imagen sobre la que se dibuja.
+     */
+    public DrawingLog(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Obtiene la operación en curso, creándola si todavía no existe.
+     *
+     * @param type Tipo de operación.
+     * @param bgr Color en orden azul, verde, rojo.
+     * @param thickness Grosor del trazo.
+     * @return Operación en curso, a la que se añaden los puntos.
+     */
+    public DrawingCommand getCurrent(DrawingCommand.Type type, int[] bgr, int thickness) {
+        if (current == null) {
+            current = new DrawingCommand(type, bgr, thickness);
+        }
+        return current;
+    }
+
+    /**
+     * Cierra la operación en curso y la añade al registro si ha dibujado algo.
+     * Las operaciones deshechas dejan de poder rehacerse.
+     *
+     * @return true si se ha añadido la operación.
+     */
+    public boolean commit() {
+        DrawingCommand command = current;
+        current = null;
+        if (command == null || !command.isComplete()) {
+            return false;
+        }
+        commands.add(command);
+        undone.clear();
+        return true;
+    }
+
+    /**
+     * Descarta la operación en curso.
+     */
+    public void discard() {
+        current = null;
+    }
+
+    /**
+     * Quita la última operación del registro, al deshacerla en la imagen.
+     */
+    public void undo() {
+        if (!commands.isEmpty()) {
+            undone.push(commands.remove(commands.size() - 1));
+        }
+    }
+
+    /**
+     * Vuelve a añadir la última operación deshecha.
+     */
+    public void redo() {
+        if (!undone.isEmpty()) {
+            commands.add(undone.pop());
+        }
+    }
+
+    /**
+     * Obtiene las operaciones del registro.
+     * @return Copia de la lista de operaciones.
+     */
+    public List<DrawingCommand> getCommands() {
+        return new ArrayList<>(commands);
+    }
+
+    /**
+     * Reproduce todas las operaciones sobre una imagen, escalando las coordenadas y el
+     * grosor del tamaño original al de la imagen de destino. El borrador restaura los
+     * píxeles de la propia imagen de destino tal como estaba antes de reproducir.
+     *
+     * @param target Imagen BGR sobre la que se dibuja.
+     * @return Zona de la imagen modificada, o null si no hay operaciones.
+     */
+    public Rect replay(Mat target) {
+        double scaleX = (double) target.width() / width;
+        double scaleY = (double) target.height() / height;
+        Rect dirty = null;
+        try (MatScope scope = new MatScope()) {
+            Mat background = scope.add(target.clone());
+            for (DrawingCommand command : commands) {
+                Rect bounds = command.apply(target, background, scaleX, scaleY);
+                dirty = dirty == null ? bounds : TileHistory.union(dirty, bounds);
+            }
+        }
+        return dirty;
+    }
+
+    /**
+     * Guarda el registro en un fichero JSONL.
+     *
+     * @param file Fichero de destino.
+     * @throws IOException Si no se puede escribir.
+     */
+    public void save(File file) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write("{\"width\":" + width + ",\"height\":" + height + "}");
+            writer.newLine();
+            for (DrawingCommand command : commands) {
+                writer.write(command.toJson());
+                writer.newLine();
+            }
+        }
+    }
+
+    /**
+     * Lee un registro guardado con {@link #save(File)}.
+     *
+     * @param file Fichero JSONL.
+     * @return Registro leído.
+     * @throws IOException Si no se puede leer o no tiene el tamaño de la imagen.
+     */
+    public static DrawingLog load(File file) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            Matcher size = header != null ? sizePattern.matcher(header) : null;
+            if (size == null || !size.find()) {
+                throw new IOException("Registro de dibujo sin tamaño de imagen: " + file);
+            }
+            DrawingLog log = new DrawingLog(Integer.parseInt(size.group(1)), Integer.parseInt(size.group(2)));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    log.commands.add(DrawingCommand.fromJson(line));
+                }
+            }
+            return log;
+        }
+    }
+
+    /**
+     * Aplica el registro a una imagen y guarda el resultado.
+     *
+     * @param input Imagen de entrada.
+     * @param output Imagen de salida.
+     * @throws IOException Si no se puede leer o escribir la imagen.
+     */
+    public void apply(File input, File output) throws IOException {
+        OpenCVRuntime.ensureLoaded();
+        try (MatScope scope = new MatScope()) {
+            Mat image = scope.add(Imgcodecs.imread(input.getAbsolutePath()));
+            if (image.empty()) {
+                throw new IOException("No se ha podido leer la imagen: " + input);
+            }
+            replay(image);
+            if (!Imgcodecs.imwrite(output.getAbsolutePath(), image)) {
+                throw new IOException("No se ha podido guardar la imagen: " + output);
+            }
+        }
+    }
+
+    /**
+     * Punto de entrada para aplicar un registro sin interfaz.
+     *
+     * @param args Registro JSONL, imagen o directorio de entrada e imagen o directorio de salida.
+     * @throws Exception Si falla la ejecución.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            logger.severe("Uso: DrawingLog <registro.jsonl> <entrada> <salida>");
+            return;
+        }
+        DrawingLog log = load(new File(args[0]));
+        File input = new File(args[1]);
+        File output = new File(args[2]);
+        if (input.isDirectory()) {
+            output.mkdirs();
+            for (File image : ImageFinder.getImageFiles(input.getPath())) {
+                log.apply(image, new File(output, image.getName()));
+                logger.info("Aplicado a " + image.getName());
+            }
+        } else {
+            log.apply(input, output);
+        }
+    }
+}
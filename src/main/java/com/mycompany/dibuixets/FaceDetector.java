@@ -4,14 +4,18 @@
 package com.mycompany.dibuixets;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.opencv.core.Mat;
 import org.opencv.core.MatOfRect;
 import org.opencv.core.Rect;
 import org.opencv.core.Scalar;
 import org.opencv.core.Size;
-import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
-import org.opencv.objdetect.CascadeClassifier;
 import org.opencv.objdetect.Objdetect;
 
 /**
@@ -20,53 +24,227 @@ import org.opencv.objdetect.Objdetect;
  */
 public class FaceDetector {
 
+    /** Fichero donde {@link #detectAndSave(File)} deja la imagen con los rostros resaltados. */
+    private static final File outputFile = new File("images/output.jpg");
+
+    /** Lado de las teselas usado por {@link #detectTiled(Mat, DetectionOptions)}. */
+    private static final int defaultTileSize = 1024;
+
+    /**
+     * Solapamiento entre teselas y tamaño máximo de rostro que se busca en ellas; los
+     * rostros mayores se buscan sobre la imagen completa reducida.
+     */
+    private static final int defaultTileOverlap = 384;
+
     /**
      * Detecta rostros en la imagen proporcionada y guarda la imagen con los rostros resaltados.
+     * El resultado se obtiene de {@link DetectionCache}, por lo que repetir la detección
+     * sobre la misma imagen no vuelve a analizarla ni a codificarla. Se devuelve una copia
+     * en "images/output.jpg" y no el fichero de la caché, que se puede borrar al liberar
+     * espacio mientras la interfaz lo sigue usando.
      *
      * @param imagePath Archivo de imagen en el que se buscarán los rostros.
-     * @return Archivo de imagen con los rostros detectados y resaltados.
+     * @return Archivo de imagen con los rostros detectados y resaltados, o null si no se pudo generar.
      */
     public static File detectAndSave(File imagePath) {
-        // Cargar la biblioteca OpenCV
-        System.load(Preferences.getOpenCVPath());
+        // Cargar la biblioteca OpenCV (solo la primera vez)
+        OpenCVRuntime.ensureLoaded();
         
-        // Crear objeto para almacenar las detecciones de rostros
-        MatOfRect faces = new MatOfRect();
-        
-        // Leer la imagen desde el archivo
-        Mat image = Imgcodecs.imread(imagePath.getAbsolutePath());
-        
-        // Convertir la imagen a escala de grises para mejorar la detección
-        Mat grayFrame = new Mat();
-        Imgproc.cvtColor(image, grayFrame, Imgproc.COLOR_BGR2GRAY);
+        try {
+            // Detectar rostros sobre una copia reducida de la imagen
+            File annotated = DetectionCache.getDefault().getAnnotatedImage(imagePath, DetectionOptions.downscaled());
+            outputFile.getAbsoluteFile().getParentFile().mkdirs();
+            Files.copy(annotated.toPath(), outputFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            return outputFile;
+        } catch (IOException ex) {
+            Logger.getLogger(FaceDetector.class.getName()).log(Level.SEVERE, null, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Detecta rostros frontales en una imagen ya cargada en memoria.
+     * El clasificador se obtiene de {@link CascadeRegistry}, por lo que se puede llamar
+     * desde varios hilos a la vez sin volver a cargar el XML.
+     *
+     * @param image Imagen en color (BGR) o en escala de grises.
+     * @return Rectángulos de los rostros detectados.
+     */
+    public static Rect[] detect(Mat image) {
+        return detect(image, new DetectionOptions());
+    }
+
+    /**
+     * Detecta objetos en una imagen ya cargada en memoria con el clasificador indicado.
+     *
+     * @param image Imagen en color (BGR) o en escala de grises.
+     * @param cascade Nombre del fichero del clasificador dentro de "data".
+     * @return Rectángulos de los objetos detectados.
+     */
+    public static Rect[] detect(Mat image, String cascade) {
+        return detect(image, new DetectionOptions().setCascade(cascade));
+    }
+
+    /**
+     * Detecta objetos en una imagen con las opciones indicadas. Si la imagen supera el
+     * tamaño de trabajo de las opciones, se detecta sobre una copia reducida y los
+     * rectángulos se devuelven en coordenadas de la imagen original.
+     *
+     * @param image Imagen en color (BGR) o en escala de grises.
+     * @param options Clasificador y parámetros de la detección.
+     * @return Rectángulos detectados en coordenadas de la imagen original.
+     */
+    public static Rect[] detect(Mat image, DetectionOptions options) {
+        Rect[] result;
+        double factor;
+        try (MatScope scope = new MatScope()) {
+            Mat grayFrame = scope.add(toGray(image));
+            
+            // Reducir la copia de trabajo si la imagen es más grande de lo necesario
+            factor = getDownscaleFactor(grayFrame.size(), options.getMaxDimension());
+            if (factor < 1.0) {
+                long t = Metrics.start();
+                Mat small = scope.newMat();
+                Imgproc.resize(grayFrame, small, new Size(), factor, factor, Imgproc.INTER_AREA);
+                MatScope.release(scope.keep(grayFrame));
+                grayFrame = small;
+                Metrics.stop(Metrics.Stage.RESIZE, t);
+            }
+            
+            // Mejorar el contraste de la imagen en escala de grises
+            long t = Metrics.start();
+            Imgproc.equalizeHist(grayFrame, grayFrame);
+            Metrics.stop(Metrics.Stage.EQUALIZE, t);
+            result = detectGray(grayFrame, options);
+        }
         
-        // Mejorar el contraste de la imagen en escala de grises
+        // Devolver los rectángulos a las coordenadas originales
+        if (factor < 1.0) {
+            for (int i = 0; i < result.length; i++) {
+                result[i] = scaleRect(result[i], 1.0 / factor, image.size());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Detecta objetos en una imagen muy grande dividiéndola en teselas solapadas que se
+     * analizan en paralelo. Ver {@link TiledFaceDetector}.
+     *
+     * @param image Imagen en color (BGR) o en escala de grises.
+     * @param options Clasificador y parámetros; la proporción mínima se aplica sobre la
+     *                altura de la imagen completa.
+     * @return Rectángulos detectados en coordenadas de la imagen, sin duplicados.
+     */
+    public static Rect[] detectTiled(Mat image, DetectionOptions options) {
+        List<Rect> result = new TiledFaceDetector(defaultTileSize, defaultTileOverlap).detect(image, options);
+        return result.toArray(new Rect[0]);
+    }
+
+    /**
+     * Convierte la imagen a escala de grises y ecualiza su histograma, que es la entrada
+     * que esperan los clasificadores en cascada.
+     *
+     * @param image Imagen en color (BGR) o en escala de grises.
+     * @return Nueva imagen en escala de grises ecualizada, que debe liberar quien la recibe.
+     */
+    static Mat toEqualizedGray(Mat image) {
+        Mat grayFrame = toGray(image);
+        long t = Metrics.start();
         Imgproc.equalizeHist(grayFrame, grayFrame);
-        
-        // Definir el tamaño mínimo de rostros detectables en píxeles
+        Metrics.stop(Metrics.Stage.EQUALIZE, t);
+        return grayFrame;
+    }
+
+    /**
+     * Convierte la imagen a escala de grises.
+     *
+     * @param image Imagen en color (BGR) o en escala de grises.
+     * @return Nueva imagen en escala de grises, que debe liberar quien la recibe.
+     */
+    private static Mat toGray(Mat image) {
+        long t = Metrics.start();
+        Mat grayFrame = MatScope.track(new Mat());
+        if (image.channels() == 1) {
+            image.copyTo(grayFrame);
+        } else {
+            Imgproc.cvtColor(image, grayFrame, Imgproc.COLOR_BGR2GRAY);
+        }
+        Metrics.stop(Metrics.Stage.COLOR_CONVERSION, t);
+        return grayFrame;
+    }
+
+    /**
+     * Calcula el factor por el que hay que reducir una imagen para que su lado mayor no
+     * supere el tamaño indicado.
+     *
+     * @param size Tamaño de la imagen.
+     * @param maxDimension Lado mayor permitido, o 0 para no reducir.
+     * @return Factor de reducción, 1 si no hace falta reducir.
+     */
+    static double getDownscaleFactor(Size size, int maxDimension) {
+        double longest = Math.max(size.width, size.height);
+        if (maxDimension <= 0 || longest <= maxDimension) {
+            return 1.0;
+        }
+        return maxDimension / longest;
+    }
+
+    /**
+     * Escala un rectángulo y lo recorta a los límites de la imagen.
+     *
+     * @param rect Rectángulo a escalar.
+     * @param factor Factor de escala.
+     * @param bounds Tamaño de la imagen de destino.
+     * @return Rectángulo escalado.
+     */
+    static Rect scaleRect(Rect rect, double factor, Size bounds) {
+        int x = (int) Math.round(rect.x * factor);
+        int y = (int) Math.round(rect.y * factor);
+        int width = (int) Math.min(Math.round(rect.width * factor), bounds.width - x);
+        int height = (int) Math.min(Math.round(rect.height * factor), bounds.height - y);
+        return new Rect(x, y, width, height);
+    }
+
+    /**
+     * Ejecuta un clasificador sobre una imagen en escala de grises ya ecualizada.
+     *
+     * @param grayFrame Imagen en escala de grises ecualizada (puede ser una submatriz).
+     * @param options Clasificador y parámetros de la detección.
+     * @return Rectángulos detectados, en coordenadas de grayFrame.
+     */
+    static Rect[] detectGray(Mat grayFrame, DetectionOptions options) {
+        // Definir el tamaño mínimo de objetos detectables en píxeles
         int height = grayFrame.height();
         int absoluteFaceSize = 0;
-        if (Math.round(height * 0.2f) > 0) {
-            absoluteFaceSize = Math.round(height * 0.2f);
+        if (Math.round(height * options.getMinSizeRatio()) > 0) {
+            absoluteFaceSize = (int) Math.round(height * options.getMinSizeRatio());
         }
         
-        // Cargar el clasificador de rostros preentrenado
-        CascadeClassifier faceCascade = new CascadeClassifier();
-        faceCascade.load("data/haarcascade_frontalface_alt2.xml");
-        
-        // Detectar rostros en la imagen
-        faceCascade.detectMultiScale(grayFrame, faces, 1.1, 2, 0 | Objdetect.CASCADE_SCALE_IMAGE, 
-                new Size(absoluteFaceSize, absoluteFaceSize), new Size());
-        
-        // Dibujar rectángulos alrededor de los rostros detectados
-        Rect[] faceArray = faces.toArray();
-        for (int i = 0; i < faceArray.length; i++) {
-            Imgproc.rectangle(image, faceArray[i], new Scalar(255, 123, 45), 3);
+        // Detectar con el clasificador del hilo actual
+        long t = Metrics.start();
+        Rect[] result;
+        try (MatScope scope = new MatScope()) {
+            MatOfRect faces = scope.add(new MatOfRect());
+            CascadeRegistry.get(options.getCascade()).detectMultiScale(grayFrame, faces,
+                    options.getScaleFactor(), options.getMinNeighbors(), 0 | Objdetect.CASCADE_SCALE_IMAGE, 
+                    new Size(absoluteFaceSize, absoluteFaceSize), new Size());
+            result = faces.toArray();
+        }
+        Metrics.stop(Metrics.Stage.DETECT, t);
+        Metrics.add("detections", result.length);
+        return result;
+    }
+
+    /**
+     * Dibuja sobre la imagen un rectángulo alrededor de cada detección.
+     *
+     * @param image Imagen sobre la que se dibuja.
+     * @param detections Rectángulos a resaltar.
+     */
+    public static void annotate(Mat image, Rect[] detections) {
+        for (int i = 0; i < detections.length; i++) {
+            Imgproc.rectangle(image, detections[i], new Scalar(255, 123, 45), 3);
         }
-        
-        // Guardar la imagen con los rostros resaltados
-        Imgcodecs.imwrite("images/output.jpg", image);
-        
-        return new File("images/output.jpg");
     }
 }
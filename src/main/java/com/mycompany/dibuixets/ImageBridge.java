@@ -0,0 +1,147 @@
+/**
+ * Conversión directa entre Mat de OpenCV y BufferedImage.
+ */
+package com.mycompany.dibuixets;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Clase ImageBridge que copia los píxeles de una Mat directamente en el buffer de una
+ * BufferedImage, sin pasar por ningún códec ni por arrays intermedios.
+ * El orden de bytes de TYPE_3BYTE_BGR coincide con el BGR de OpenCV y el de
+ * TYPE_BYTE_GRAY con una Mat de un canal, así que tampoco hace falta reordenar canales.
+ * Si se pasa una imagen de destino compatible se reutiliza y no se reserva memoria.
+ */
+public class ImageBridge {
+
+    private ImageBridge() {
+    }
+
+    /**
+     * Convierte una Mat en una nueva BufferedImage.
+     *
+     * @param mat Imagen de OpenCV de 8 bits con 1, 3 o 4 canales.
+     * @return Imagen TYPE_BYTE_GRAY o TYPE_3BYTE_BGR.
+     */
+    public static BufferedImage toBufferedImage(Mat mat) {
+        return toBufferedImage(mat, null);
+    }
+
+    /**
+     * Convierte una Mat en BufferedImage reutilizando la imagen de destino si tiene el
+     * mismo tamaño y tipo.
+     *
+     * @param mat Imagen de OpenCV de 8 bits con 1, 3 o 4 canales.
+     * @param reuse Imagen de destino a reutilizar, o null.
+     * @return La imagen reutilizada o una nueva si no era compatible.
+     */
+    public static BufferedImage toBufferedImage(Mat mat, BufferedImage reuse) {
+        long t = Metrics.start();
+        try (MatScope scope = new MatScope()) {
+            Mat source = mat;
+            if (source.channels() == 4) {
+                source = scope.newMat();
+                Imgproc.cvtColor(mat, source, Imgproc.COLOR_BGRA2BGR);
+            }
+            if (source.depth() != CvType.CV_8U) {
+                throw new IllegalArgumentException("Solo se admiten imágenes de 8 bits: " + mat);
+            }
+            if (!source.isContinuous()) {
+                source = scope.add(source.clone());
+            }
+
+            int type = source.channels() == 1 ? BufferedImage.TYPE_BYTE_GRAY : BufferedImage.TYPE_3BYTE_BGR;
+            BufferedImage target = isCompatible(reuse, source.width(), source.height(), type)
+                    ? reuse : new BufferedImage(source.width(), source.height(), type);
+            source.get(0, 0, getPixels(target));
+            return target;
+        } finally {
+            Metrics.stop(Metrics.Stage.DISPLAY_CONVERSION, t);
+        }
+    }
+
+    /**
+     * Copia solo una zona de una Mat en una BufferedImage que ya tiene su tamaño y tipo,
+     * por ejemplo la imagen que se muestra mientras se dibuja.
+     *
+     * @param mat Imagen de OpenCV de 8 bits con 1 o 3 canales.
+     * @param target Imagen de destino compatible con la Mat.
+     * @param region Zona a copiar; se recorta a los límites de la imagen.
+     */
+    public static void copyRegion(Mat mat, BufferedImage target, Rect region) {
+        int x = Math.max(0, region.x);
+        int y = Math.max(0, region.y);
+        int width = Math.min(mat.width(), region.x + region.width) - x;
+        int height = Math.min(mat.height(), region.y + region.height) - y;
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        long t = Metrics.start();
+        int channels = mat.channels();
+        int rowBytes = width * channels;
+        byte[] rows = new byte[rowBytes * height];
+        Mat sub = mat.submat(y, y + height, x, x + width);
+        sub.get(0, 0, rows);
+        sub.release();
+
+        byte[] pixels = getPixels(target);
+        int stride = target.getWidth() * channels;
+        for (int r = 0; r < height; r++) {
+            System.arraycopy(rows, r * rowBytes, pixels, (y + r) * stride + x * channels, rowBytes);
+        }
+        Metrics.stop(Metrics.Stage.DISPLAY_CONVERSION, t);
+    }
+
+    /**
+     * Convierte una BufferedImage en una Mat de un canal en escala de grises.
+     * Las imágenes TYPE_BYTE_GRAY se copian directamente; el resto se convierte antes
+     * a escala de grises con Java2D.
+     *
+     * @param image Imagen de cualquier tipo.
+     * @return Mat CV_8UC1 nueva. Debe liberarla quien la recibe.
+     */
+    public static Mat toGrayMat(BufferedImage image) {
+        BufferedImage gray = image;
+        if (image.getType() != BufferedImage.TYPE_BYTE_GRAY
+                || image.getRaster().getSampleModelTranslateX() != 0
+                || image.getRaster().getSampleModelTranslateY() != 0) {
+            gray = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+            Graphics2D g = gray.createGraphics();
+            g.drawImage(image, 0, 0, null);
+            g.dispose();
+        }
+        Mat mat = MatScope.track(new Mat(gray.getHeight(), gray.getWidth(), CvType.CV_8UC1));
+        mat.put(0, 0, getPixels(gray));
+        return mat;
+    }
+
+    /**
+     * Obtiene el array de bytes que respalda una imagen de tipo byte.
+     *
+     * @param image Imagen TYPE_BYTE_GRAY o TYPE_3BYTE_BGR.
+     * @return Array de píxeles de la imagen (no una copia).
+     */
+    static byte[] getPixels(BufferedImage image) {
+        return ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Comprueba si una imagen puede recibir directamente los píxeles de una Mat.
+     *
+     * @param image Imagen candidata, puede ser null.
+     * @param width Ancho de la Mat.
+     * @param height Alto de la Mat.
+     * @param type Tipo de BufferedImage necesario.
+     * @return true si la imagen se puede reutilizar.
+     */
+    static boolean isCompatible(BufferedImage image, int width, int height, int type) {
+        return image != null && image.getType() == type
+                && image.getWidth() == width && image.getHeight() == height;
+    }
+}
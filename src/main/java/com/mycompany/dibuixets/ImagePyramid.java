@@ -0,0 +1,193 @@
+/**
+ * Pirámide de resoluciones de una imagen para mostrarla con zoom.
+ */
+package com.mycompany.dibuixets;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.Rect;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Clase ImagePyramid que guarda una imagen a varias resoluciones, cada nivel a la mitad
+ * del anterior, y dibuja solo las teselas visibles del nivel adecuado para el zoom.
+ * Así el coste de pintar depende del tamaño de la ventana y no del de la imagen.
+ *
+ * El nivel 0 es la propia imagen que se edita y su BufferedImage de pantalla; cuando se
+ * modifica una zona, {@link #update(Rect)} actualiza esa zona en todos los niveles.
+ * Cada píxel de un nivel es exactamente la media de un bloque de 2x2 del anterior (los
+ * lados impares se completan repitiendo el borde), de modo que actualizar una zona da
+ * el mismo resultado que volver a calcular el nivel entero.
+ */
+public class ImagePyramid {
+
+    /** Lado en píxeles de las teselas que se dibujan. */
+    static final int TILE_SIZE = 512;
+
+    /** Los niveles se reducen hasta que el lado mayor cabe en este tamaño. */
+    private static final int minLevelSize = 256;
+
+    private final List<Mat> mats = new ArrayList<>();
+    private final List<BufferedImage> images = new ArrayList<>();
+
+    /**
+     * Constructor de ImagePyramid. Calcula todos los niveles de una vez.
+     *
+     * @param base Imagen a resolución completa. No se copia ni se libera.
+     * @param baseImage BufferedImage de pantalla de la imagen a resolución completa.
+     */
+    public ImagePyramid(Mat base, BufferedImage baseImage) {
+        mats.add(base);
+        images.add(baseImage);
+        Mat previous = base;
+        while (Math.max(previous.width(), previous.height()) > minLevelSize) {
+            Mat level = MatScope.track(new Mat((previous.height() + 1) / 2, (previous.width() + 1) / 2,
+                    previous.type()));
+            halve(previous, level);
+            mats.add(level);
+            images.add(ImageBridge.toBufferedImage(level));
+            previous = level;
+        }
+    }
+
+    /**
+     * Actualiza una zona modificada de la imagen en todos los niveles.
+     *
+     * @param region Zona modificada en coordenadas de la imagen completa.
+     */
+    public void update(Rect region) {
+        ImageBridge.copyRegion(mats.get(0), images.get(0), region);
+        Rect changed = clip(region, mats.get(0));
+        for (int level = 1; level < mats.size() && changed != null; level++) {
+            Mat previous = mats.get(level - 1);
+            Mat current = mats.get(level);
+            int x0 = changed.x / 2;
+            int y0 = changed.y / 2;
+            int x1 = Math.min(current.width(), (changed.x + changed.width + 1) / 2);
+            int y1 = Math.min(current.height(), (changed.y + changed.height + 1) / 2);
+            Rect target = new Rect(x0, y0, x1 - x0, y1 - y0);
+            Rect source = new Rect(x0 * 2, y0 * 2,
+                    Math.min(previous.width(), x1 * 2) - x0 * 2, Math.min(previous.height(), y1 * 2) - y0 * 2);
+
+            try (MatScope scope = new MatScope()) {
+                Mat from = scope.add(previous.submat(source));
+                Mat to = scope.add(current.submat(target));
+                halve(from, to);
+            }
+            ImageBridge.copyRegion(current, images.get(level), target);
+            changed = target;
+        }
+    }
+
+    /**
+     * Elige el nivel de menor resolución que sigue teniendo al menos un píxel por cada
+     * píxel de pantalla.
+     *
+     * @param zoom Píxeles de pantalla por píxel de la imagen completa.
+     * @return Índice del nivel.
+     */
+    public int getLevel(double zoom) {
+        int level = 0;
+        while (level + 1 < images.size() && zoom * (1 << (level + 1)) <= 1) {
+            level++;
+        }
+        return level;
+    }
+
+    /**
+     * Dibuja las teselas visibles de la imagen.
+     *
+     * @param g Contexto gráfico.
+     * @param zoom Píxeles de pantalla por píxel de la imagen completa.
+     * @param originX Posición en pantalla de la esquina superior izquierda de la imagen.
+     * @param originY Posición en pantalla de la esquina superior izquierda de la imagen.
+     * @param clip Zona de la pantalla que hay que pintar.
+     */
+    public void paint(Graphics2D g, double zoom, double originX, double originY, Rectangle clip) {
+        int level = getLevel(zoom);
+        BufferedImage image = images.get(level);
+        double levelZoom = zoom * (1 << level);
+
+        int left = (int) Math.max(0, Math.floor((clip.x - originX) / levelZoom));
+        int top = (int) Math.max(0, Math.floor((clip.y - originY) / levelZoom));
+        int right = (int) Math.min(image.getWidth(), Math.ceil((clip.x + clip.width - originX) / levelZoom));
+        int bottom = (int) Math.min(image.getHeight(), Math.ceil((clip.y + clip.height - originY) / levelZoom));
+        if (left >= right || top >= bottom) {
+            return;
+        }
+
+        for (int ty = top / TILE_SIZE; ty <= (bottom - 1) / TILE_SIZE; ty++) {
+            for (int tx = left / TILE_SIZE; tx <= (right - 1) / TILE_SIZE; tx++) {
+                int sx0 = tx * TILE_SIZE;
+                int sy0 = ty * TILE_SIZE;
+                int sx1 = Math.min(image.getWidth(), sx0 + TILE_SIZE);
+                int sy1 = Math.min(image.getHeight(), sy0 + TILE_SIZE);
+                // Se redondean los dos bordes igual para que no queden huecos entre teselas
+                int dx0 = (int) Math.round(originX + sx0 * levelZoom);
+                int dy0 = (int) Math.round(originY + sy0 * levelZoom);
+                int dx1 = (int) Math.round(originX + sx1 * levelZoom);
+                int dy1 = (int) Math.round(originY + sy1 * levelZoom);
+                g.drawImage(image, dx0, dy0, dx1, dy1, sx0, sy0, sx1, sy1, null);
+            }
+        }
+    }
+
+    /**
+     * Obtiene el número de niveles.
+     * @return Número de niveles, incluido el de resolución completa.
+     */
+    public int getLevelCount() {
+        return images.size();
+    }
+
+    /**
+     * Libera los niveles reducidos. El nivel 0 pertenece a quien creó la pirámide.
+     */
+    public void release() {
+        for (int level = 1; level < mats.size(); level++) {
+            MatScope.release(mats.get(level));
+        }
+        mats.subList(1, mats.size()).clear();
+        images.subList(1, images.size()).clear();
+    }
+
+    /**
+     * Reduce una imagen a la mitad haciendo la media de cada bloque de 2x2. Si un lado es
+     * impar se repite la última fila o columna, así que el resultado coincide con el de
+     * reducir la imagen entera aunque se aplique solo a una zona que llega al borde.
+     *
+     * @param source Imagen o zona de origen.
+     * @param target Destino, ya creado con la mitad de tamaño redondeada hacia arriba.
+     */
+    private static void halve(Mat source, Mat target) {
+        try (MatScope scope = new MatScope()) {
+            Mat even = source;
+            int right = source.width() % 2;
+            int bottom = source.height() % 2;
+            if (right != 0 || bottom != 0) {
+                even = scope.newMat();
+                Core.copyMakeBorder(source, even, 0, bottom, 0, right, Core.BORDER_REPLICATE | Core.BORDER_ISOLATED);
+            }
+            // Con un factor exacto de 0,5, INTER_AREA hace la media de cada bloque de 2x2
+            Imgproc.resize(even, target, target.size(), 0, 0, Imgproc.INTER_AREA);
+        }
+    }
+
+    /**
+     * Recorta un rectángulo a los límites de una imagen.
+     *
+     * @return Rectángulo recortado, o null si queda vacío.
+     */
+    private static Rect clip(Rect region, Mat mat) {
+        int x = Math.max(0, region.x);
+        int y = Math.max(0, region.y);
+        int right = Math.min(mat.width(), region.x + region.width);
+        int bottom = Math.min(mat.height(), region.y + region.height);
+        return right > x && bottom > y ? new Rect(x, y, right - x, bottom - y) : null;
+    }
+}
@@ -10,10 +10,18 @@ import java.awt.Image;
 import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.ImageIO;
+import javax.swing.BorderFactory;
 import javax.swing.ImageIcon;
+import javax.swing.JButton;
+import javax.swing.JDialog;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.SwingUtilities;
 
 /**
@@ -31,13 +39,31 @@ public class Main extends javax.swing.JFrame {
     /** Archivo de imagen seleccionado por el usuario. */
     File imageFile;
 
+    /** Ejecuta el OCR y la detección de caras fuera del hilo de eventos. */
+    private final BackgroundRunner backgroundRunner = new BackgroundRunner("main-task");
+
+    /** Diálogo de progreso de la tarea en marcha, creado al usarse por primera vez. */
+    private JDialog progressDialog;
+    private JLabel progressLabel;
+    private CompletableFuture<?> progressTask;
     
     /**
      * Constructor de la clase Main.
      * Inicializa los componentes de la interfaz gráfica y centra la ventana en la pantalla.
      */
     public Main() {
-        Preferences.getOpenCVPath();
+        OpenCVRuntime.ensureLoaded();
+        OpenCVRuntime.warmUpInBackground();
+        if (OpenCVRuntime.isWarmUpEnabled()) {
+            // El clasificador es propio de cada hilo: se carga en el mismo hilo que detecta
+            backgroundRunner.submit(() -> {
+                OpenCVRuntime.warmUpCascade();
+                return null;
+            });
+        }
+        if (Metrics.isEnabled()) {
+            Metrics.startPeriodicLog(60, java.util.concurrent.TimeUnit.SECONDS);
+        }
         initComponents();
         jLabel1.setVisible(false);
         setLocationRelativeTo(null);
@@ -167,11 +193,18 @@ public class Main extends javax.swing.JFrame {
                 }
         switch (accion){
             case "Text Detection":
-                String text = TextRecognition.getTextFromImage(imageFile);
-                jLabel1.setText(text);
+                File textImage = imageFile;
+                runInBackground("Reconociendo texto...", () -> TextRecognition.getTextFromImage(textImage))
+                        .thenAccept(text -> jLabel1.setText(text));
                 break;
             case "Face Detection":
-                setImage(FaceDetector.detectAndSave(imageFile));
+                File faceImage = imageFile;
+                runInBackground("Detectando caras...", () -> FaceDetector.detectAndSave(faceImage))
+                        .thenAccept(faces -> {
+                            if (faces != null) {
+                                setImage(faces);
+                            }
+                        });
                 break;
             case "Draw":
                 OpenCVDrawing.setUp(imageFile, this);
@@ -229,50 +262,129 @@ public class Main extends javax.swing.JFrame {
         });
     }
     
+    /**
+     * Ejecuta una tarea en segundo plano mostrando un diálogo de progreso con la opción
+     * de cancelarla. Si ya había otra tarea en marcha se descarta.
+     *
+     * @param <T> Tipo del resultado.
+     * @param message Texto que se muestra mientras dura la tarea.
+     * @param task Tarea a ejecutar.
+     * @return Futuro que se completa en el hilo de eventos con el resultado.
+     */
+    private <T> CompletableFuture<T> runInBackground(String message, Callable<T> task) {
+        CompletableFuture<T> result = backgroundRunner.submit(task);
+        showProgress(message, result);
+        result.whenComplete((value, ex) -> {
+            if (progressTask == result) {
+                hideProgress();
+            }
+            if (ex != null && !result.isCancelled()) {
+                Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
+                javax.swing.JOptionPane.showMessageDialog(this, ex.toString(), "Error", javax.swing.JOptionPane.ERROR_MESSAGE);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Muestra el diálogo de progreso asociado a una tarea. El diálogo se crea la primera
+     * vez y después se reutiliza.
+     *
+     * @param message Texto del diálogo.
+     * @param task Tarea que se cancela al pulsar "Cancelar".
+     */
+    private void showProgress(String message, CompletableFuture<?> task) {
+        progressTask = task;
+        if (progressDialog == null) {
+            progressDialog = new JDialog(this, "Procesando", false);
+            progressLabel = new JLabel();
+            JProgressBar bar = new JProgressBar();
+            bar.setIndeterminate(true);
+            JButton cancel = new JButton("Cancelar");
+            cancel.addActionListener(e -> {
+                CompletableFuture<?> current = progressTask;
+                if (current != null) {
+                    current.cancel(true);
+                }
+                hideProgress();
+            });
+            JPanel panel = new JPanel(new BorderLayout(8, 8));
+            panel.setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
+            panel.add(progressLabel, BorderLayout.NORTH);
+            panel.add(bar, BorderLayout.CENTER);
+            panel.add(cancel, BorderLayout.SOUTH);
+            progressDialog.setContentPane(panel);
+            progressDialog.setDefaultCloseOperation(JDialog.DO_NOTHING_ON_CLOSE);
+        }
+        progressLabel.setText(message);
+        progressDialog.pack();
+        progressDialog.setLocationRelativeTo(this);
+        progressDialog.setVisible(true);
+    }
+
+    /**
+     * Oculta el diálogo de progreso.
+     */
+    private void hideProgress() {
+        progressTask = null;
+        if (progressDialog != null) {
+            progressDialog.setVisible(false);
+        }
+    }
+
     /**
      * Establece la imagen seleccionada en la interfaz, escalándola si es necesario.
      * @param file Archivo de imagen seleccionado.
      */
     public void setImage(File file){
-        imageFile = file;
-        BufferedImage img;
         try {
-            img = ImageIO.read(file);
+            BufferedImage img = ImageIO.read(file);
             if (img != null) {
-                // Obtener dimensiones del panel
-                int panelWidth = jPanel1.getWidth();
-                int panelHeight = jPanel1.getHeight();
-
-                // Obtener las dimensiones originales de la imagen
-                int imgWidth = img.getWidth();
-                int imgHeight = img.getHeight();
+                setImage(img, file);
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
 
-                // Calcular la relación de aspecto de la imagen
-                double aspectRatio = (double) imgWidth / imgHeight;
+    /**
+     * Establece una imagen que ya está en memoria, sin volver a leerla del disco.
+     * @param img Imagen a mostrar; puede ser una versión reducida del archivo.
+     * @param file Archivo al que corresponde la imagen, que pasa a ser el seleccionado.
+     */
+    public void setImage(BufferedImage img, File file){
+        imageFile = file;
 
-                // Ajustar las dimensiones de la imagen para que encaje en el panel, manteniendo la relación de aspecto
-                int newWidth = panelWidth;
-                int newHeight = (int) (panelWidth / aspectRatio);
+        // Obtener dimensiones del panel
+        int panelWidth = jPanel1.getWidth();
+        int panelHeight = jPanel1.getHeight();
 
-                // Si la altura calculada es mayor que la altura del panel, ajustamos la altura y recalculamos el ancho
-                if (newHeight > panelHeight) {
-                    newHeight = panelHeight;
-                    newWidth = (int) (panelHeight * aspectRatio);
-                }
+        // Obtener las dimensiones originales de la imagen
+        int imgWidth = img.getWidth();
+        int imgHeight = img.getHeight();
 
-                // Escalar la imagen con las nuevas dimensiones
-                Image scaledImg = img.getScaledInstance(newWidth, newHeight, Image.SCALE_SMOOTH);
+        // Calcular la relación de aspecto de la imagen
+        double aspectRatio = (double) imgWidth / imgHeight;
 
-                jLabel2.setText(""); // Eliminar texto
-                jLabel2.setIcon(new ImageIcon(scaledImg));
+        // Ajustar las dimensiones de la imagen para que encaje en el panel, manteniendo la relación de aspecto
+        int newWidth = panelWidth;
+        int newHeight = (int) (panelWidth / aspectRatio);
 
-                // Revalidar y repintar para aplicar cambios
-                jLabel2.revalidate();
-                jLabel2.repaint();
-            }
-        } catch (IOException ex) {
-            Logger.getLogger(Main.class.getName()).log(Level.SEVERE, null, ex);
+        // Si la altura calculada es mayor que la altura del panel, ajustamos la altura y recalculamos el ancho
+        if (newHeight > panelHeight) {
+            newHeight = panelHeight;
+            newWidth = (int) (panelHeight * aspectRatio);
         }
+
+        // Escalar la imagen con las nuevas dimensiones
+        Image scaledImg = img.getScaledInstance(newWidth, newHeight, Image.SCALE_SMOOTH);
+
+        jLabel2.setText(""); // Eliminar texto
+        jLabel2.setIcon(new ImageIcon(scaledImg));
+
+        // Revalidar y repintar para aplicar cambios
+        jLabel2.revalidate();
+        jLabel2.repaint();
     }
 
 
@@ -0,0 +1,143 @@
+/**
+ * Gestión por ámbitos de la memoria nativa de las matrices de OpenCV.
+ */
+package com.mycompany.dibuixets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.opencv.core.Mat;
+
+/**
+ * Clase MatScope que libera al cerrarse todas las matrices creadas o registradas en ella,
+ * para usarse con try-with-resources:
+ *
+ * <pre>
+ * try (MatScope scope = new MatScope()) {
+ *     Mat gray = scope.newMat();
+ *     Imgproc.cvtColor(image, gray, Imgproc.COLOR_BGR2GRAY);
+ *     return scope.keep(resultado);
+ * }
+ * </pre>
+ *
+ * La memoria de una Mat es nativa y el recolector de basura no la ve, así que esperar
+ * a que se finalicen las cabeceras deja crecer la memoria del proceso.
+ *
+ * Con la propiedad del sistema "dibuixets.matDebug=true" se guarda el punto de creación
+ * de cada matriz registrada y {@link #reportLeaks()} (también al salir de la JVM) informa
+ * de las que no se han liberado.
+ */
+public class MatScope implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(MatScope.class.getName());
+
+    private static final boolean debug = Boolean.getBoolean("dibuixets.matDebug");
+
+    /** Matrices registradas y todavía no liberadas, con su punto de creación. */
+    private static final Map<Long, Throwable> live = new ConcurrentHashMap<>();
+
+    static {
+        if (debug) {
+            Metrics.registerGauge("mat.live", () -> live.size());
+            Runtime.getRuntime().addShutdownHook(new Thread(MatScope::reportLeaks, "mat-leak-report"));
+        }
+    }
+
+    private final List<Mat> mats = new ArrayList<>();
+
+    /**
+     * Crea una matriz vacía que se liberará al cerrar el ámbito.
+     * @return Nueva matriz.
+     */
+    public Mat newMat() {
+        return add(new Mat());
+    }
+
+    /**
+     * Registra una matriz para liberarla al cerrar el ámbito.
+     *
+     * @param <T> Tipo de la matriz.
+     * @param mat Matriz a registrar.
+     * @return La misma matriz.
+     */
+    public <T extends Mat> T add(T mat) {
+        mats.add(track(mat));
+        return mat;
+    }
+
+    /**
+     * Saca una matriz del ámbito para que sobreviva a su cierre. Quien la recibe pasa a
+     * ser responsable de liberarla con {@link #release(Mat)}.
+     *
+     * @param <T> Tipo de la matriz.
+     * @param mat Matriz registrada en este ámbito.
+     * @return La misma matriz.
+     */
+    public <T extends Mat> T keep(T mat) {
+        for (int i = mats.size() - 1; i >= 0; i--) {
+            if (mats.get(i) == mat) {
+                mats.remove(i);
+                break;
+            }
+        }
+        return mat;
+    }
+
+    /**
+     * Libera todas las matrices del ámbito, en orden inverso de registro.
+     */
+    @Override
+    public void close() {
+        for (int i = mats.size() - 1; i >= 0; i--) {
+            release(mats.get(i));
+        }
+        mats.clear();
+    }
+
+    /**
+     * Registra una matriz de larga duración en el detector de fugas, sin ligarla a ningún
+     * ámbito. Debe liberarse con {@link #release(Mat)}.
+     *
+     * @param <T> Tipo de la matriz.
+     * @param mat Matriz a registrar.
+     * @return La misma matriz.
+     */
+    public static <T extends Mat> T track(T mat) {
+        if (debug && mat != null) {
+            live.put(mat.nativeObj, new Throwable("Mat creada aquí"));
+        }
+        return mat;
+    }
+
+    /**
+     * Libera la memoria nativa de una matriz y la da de baja del detector de fugas.
+     *
+     * @param mat Matriz a liberar; se ignora si es null.
+     */
+    public static void release(Mat mat) {
+        if (mat != null) {
+            if (debug) {
+                live.remove(mat.nativeObj);
+            }
+            mat.release();
+        }
+    }
+
+    /**
+     * Escribe en el log las matrices registradas que no se han liberado, con el punto
+     * donde se crearon. Solo tiene efecto en modo de depuración.
+     *
+     * @return Número de matrices sin liberar.
+     */
+    public static int reportLeaks() {
+        if (!debug) {
+            return 0;
+        }
+        for (Throwable site : live.values()) {
+            logger.log(Level.WARNING, "Mat sin liberar", site);
+        }
+        return live.size();
+    }
+}
@@ -0,0 +1,262 @@
+/**
+ * Métricas ligeras de tiempos por etapa, contadores e indicadores de memoria.
+ */
+package com.mycompany.dibuixets;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.logging.Logger;
+
+/**
+ * Clase Metrics que acumula el tiempo de cada etapa del procesado de imágenes, contadores
+ * de eventos e indicadores (gauges) de memoria.
+ * Se activa con la propiedad del sistema "dibuixets.metrics=true" o con
+ * {@link #setEnabled(boolean)}. Desactivada, {@link #start()} devuelve 0 sin leer el reloj
+ * y el resto de métodos retornan enseguida, de modo que el coste es una lectura de un
+ * campo volatile por llamada.
+ *
+ * <pre>
+ * long t = Metrics.start();
+ * Imgproc.cvtColor(image, gray, Imgproc.COLOR_BGR2GRAY);
+ * Metrics.stop(Metrics.Stage.COLOR_CONVERSION, t);
+ * </pre>
+ */
+public class Metrics {
+    private static final Logger logger = Logger.getLogger(Metrics.class.getName());
+
+    /**
+     * Etapas medidas.
+     */
+    public enum Stage {
+        DECODE, COLOR_CONVERSION, RESIZE, EQUALIZE, DETECT, ENCODE, OCR, CAPTURE, DISPLAY_CONVERSION
+    }
+
+    private static volatile boolean enabled = Boolean.getBoolean("dibuixets.metrics");
+
+    private static final Map<Stage, Timer> timers = new EnumMap<>(Stage.class);
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private static final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private static ScheduledExecutorService reporter;
+
+    static {
+        for (Stage stage : Stage.values()) {
+            timers.put(stage, new Timer());
+        }
+        registerGauge("jvm.heap.used.bytes", () -> {
+            Runtime runtime = Runtime.getRuntime();
+            return runtime.totalMemory() - runtime.freeMemory();
+        });
+        registerGauge("process.rss.bytes", Metrics::getResidentSetSize);
+        registerGauge("jvm.direct.bytes", () -> {
+            long total = 0;
+            for (java.lang.management.BufferPoolMXBean pool
+                    : ManagementFactory.getPlatformMXBeans(java.lang.management.BufferPoolMXBean.class)) {
+                total += pool.getMemoryUsed();
+            }
+            return total;
+        });
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * Acumulador de tiempos de una etapa.
+     */
+    private static class Timer {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        void reset() {
+            count.reset();
+            totalNanos.reset();
+            maxNanos.reset();
+        }
+    }
+
+    /**
+     * Indica si las métricas están activadas.
+     * @return true si se están registrando métricas.
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Activa o desactiva el registro de métricas.
+     * @param value true para activarlo.
+     */
+    public static void setEnabled(boolean value) {
+        enabled = value;
+    }
+
+    /**
+     * Marca el inicio de una etapa.
+     * @return Instante actual en nanosegundos, o 0 si las métricas están desactivadas.
+     */
+    public static long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /**
+     * Registra el final de una etapa iniciada con {@link #start()}.
+     *
+     * @param stage Etapa medida.
+     * @param start Valor devuelto por {@link #start()}.
+     */
+    public static void stop(Stage stage, long start) {
+        if (start != 0) {
+            timers.get(stage).record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Incrementa un contador en uno.
+     * @param name Nombre del contador.
+     */
+    public static void increment(String name) {
+        add(name, 1);
+    }
+
+    /**
+     * Suma una cantidad a un contador.
+     *
+     * @param name Nombre del contador.
+     * @param amount Cantidad a sumar.
+     */
+    public static void add(String name, long amount) {
+        if (enabled) {
+            counters.computeIfAbsent(name, k -> new LongAdder()).add(amount);
+        }
+    }
+
+    /**
+     * Registra un indicador cuyo valor se calcula al consultar las métricas.
+     *
+     * @param name Nombre del indicador.
+     * @param supplier Función que devuelve el valor actual.
+     */
+    public static void registerGauge(String name, LongSupplier supplier) {
+        gauges.put(name, supplier);
+    }
+
+    /**
+     * Obtiene una instantánea de todas las métricas.
+     * Los tiempos se expresan como "etapa.count", "etapa.totalMs" y "etapa.maxMs".
+     *
+     * @return Mapa ordenado de nombre a valor.
+     */
+    public static Map<String, Number> snapshot() {
+        Map<String, Number> result = new TreeMap<>();
+        for (Map.Entry<Stage, Timer> entry : timers.entrySet()) {
+            long count = entry.getValue().count.sum();
+            if (count > 0) {
+                String name = "stage." + entry.getKey().name().toLowerCase(Locale.ROOT);
+                result.put(name + ".count", count);
+                result.put(name + ".totalMs", entry.getValue().totalNanos.sum() / 1e6);
+                result.put(name + ".maxMs", entry.getValue().maxNanos.get() / 1e6);
+            }
+        }
+        for (Map.Entry<String, LongAdder> entry : counters.entrySet()) {
+            result.put("counter." + entry.getKey(), entry.getValue().sum());
+        }
+        for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+            result.put("gauge." + entry.getKey(), entry.getValue().getAsLong());
+        }
+        return result;
+    }
+
+    /**
+     * Convierte la instantánea actual a JSON.
+     * @return Objeto JSON de una sola línea.
+     */
+    public static String toJson() {
+        StringBuilder sb = new StringBuilder("{");
+        for (Map.Entry<String, Number> entry : snapshot().entrySet()) {
+            if (sb.length() > 1) {
+                sb.append(',');
+            }
+            sb.append('"').append(entry.getKey()).append("\":");
+            Number value = entry.getValue();
+            sb.append(value instanceof Double ? String.format(Locale.ROOT, "%.3f", value) : value.toString());
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Reinicia tiempos y contadores. Los indicadores no se ven afectados.
+     */
+    public static void reset() {
+        for (Timer timer : timers.values()) {
+            timer.reset();
+        }
+        counters.clear();
+    }
+
+    /**
+     * Escribe periódicamente la instantánea en el log, en un hilo en segundo plano.
+     * Llamarlo de nuevo cambia el periodo.
+     *
+     * @param period Periodo entre líneas de log.
+     * @param unit Unidad del periodo.
+     */
+    public static synchronized void startPeriodicLog(long period, TimeUnit unit) {
+        stopPeriodicLog();
+        reporter = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "metrics-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> logger.info("metrics " + toJson()), period, period, unit);
+    }
+
+    /**
+     * Detiene el log periódico iniciado con {@link #startPeriodicLog(long, TimeUnit)}.
+     */
+    public static synchronized void stopPeriodicLog() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+
+    /**
+     * Lee la memoria residente del proceso, que incluye la memoria nativa de OpenCV.
+     * Se usa la línea VmRSS de /proc/self/status, que viene en kB y no depende del
+     * tamaño de página del núcleo (4K, 16K o 64K según la arquitectura).
+     * @return Bytes residentes, o -1 si el sistema no expone /proc/self/status.
+     */
+    private static long getResidentSetSize() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    String[] fields = line.substring("VmRSS:".length()).trim().split("\\s+");
+                    return Long.parseLong(fields[0]) * 1024;
+                }
+            }
+            return -1;
+        } catch (IOException | RuntimeException ex) {
+            return -1;
+        }
+    }
+}
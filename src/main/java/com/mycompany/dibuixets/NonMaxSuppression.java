@@ -0,0 +1,66 @@
+/**
+ * Supresión de no máximos para fusionar detecciones duplicadas.
+ */
+package com.mycompany.dibuixets;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.opencv.core.Rect;
+
+/**
+ * Clase NonMaxSuppression que elimina rectángulos que se solapan demasiado con otro
+ * mayor. Los clasificadores Haar no devuelven puntuaciones, así que se conserva el
+ * rectángulo de mayor área de cada grupo.
+ */
+public class NonMaxSuppression {
+
+    private NonMaxSuppression() {
+    }
+
+    /**
+     * Fusiona las detecciones duplicadas.
+     * Dos rectángulos se consideran el mismo objeto si su intersección sobre la unión
+     * supera el umbral o si uno queda casi por completo dentro del otro, que es lo que
+     * ocurre cuando un rostro aparece recortado en el borde de una tesela.
+     *
+     * @param rects Rectángulos detectados.
+     * @param iouThreshold Umbral de intersección sobre unión (por ejemplo 0.3).
+     * @return Rectángulos sin duplicados.
+     */
+    public static List<Rect> suppress(List<Rect> rects, double iouThreshold) {
+        List<Rect> sorted = new ArrayList<>(rects);
+        sorted.sort(Comparator.comparingDouble(Rect::area).reversed());
+
+        List<Rect> kept = new ArrayList<>();
+        for (Rect candidate : sorted) {
+            boolean duplicate = false;
+            for (Rect other : kept) {
+                double intersection = intersectionArea(candidate, other);
+                double union = candidate.area() + other.area() - intersection;
+                if (intersection / union > iouThreshold
+                        || intersection / Math.min(candidate.area(), other.area()) > 0.7) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                kept.add(candidate);
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * Calcula el área de la intersección de dos rectángulos.
+     *
+     * @param a Primer rectángulo.
+     * @param b Segundo rectángulo.
+     * @return Área de la intersección, 0 si no se cortan.
+     */
+    static double intersectionArea(Rect a, Rect b) {
+        int width = Math.min(a.x + a.width, b.x + b.width) - Math.max(a.x, b.x);
+        int height = Math.min(a.y + a.height, b.y + b.height) - Math.max(a.y, b.y);
+        return width > 0 && height > 0 ? (double) width * height : 0;
+    }
+}
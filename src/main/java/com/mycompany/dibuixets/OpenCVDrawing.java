@@ -9,7 +9,10 @@ import java.awt.*;
 import java.awt.event.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.util.Stack;
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import org.opencv.core.Point; // Para dibujar en la imagen con OpenCV
 
 /**
@@ -24,14 +27,33 @@ public class OpenCVDrawing extends JPanel {
     private boolean eraserMode = false;
     private boolean drawingRectangle = false;
     private boolean drawingCircle = false;
-    private Stack<Mat> undoStack = new Stack<>();
-    private Stack<Mat> redoStack = new Stack<>();
+    private TileHistory history;
+    private DrawingLog drawingLog;
+    private final File imageFile;
     private JButton eraserButton;
     private double scaleX, scaleY, scale;
     private int newWidth, newHeight; 
     private int offsetX, offsetY;
+    private ImagePyramid pyramid;
+    private boolean fitToWindow = true;
+    private java.awt.Point panStart;
+    private Rectangle overlayBounds;
     private static Main mainFrame;
 
+    /** Límites del zoom, en píxeles de pantalla por píxel de imagen. */
+    private static final double minZoom = 0.01;
+    private static final double maxZoom = 32;
+
+    /** Lado mayor de la vista previa que se pasa a la ventana principal al guardar. */
+    private static final int previewSize = 1600;
+
+    /** Hilo que codifica y escribe las imágenes guardadas. */
+    private static final ExecutorService saveExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "image-save");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     
     /**
      * Constructor de la clase OpenCVDrawing.
@@ -40,79 +62,259 @@ public class OpenCVDrawing extends JPanel {
      * @param eraserButton Botón para activar el modo borrador.
      */ 
     public OpenCVDrawing(String imagePath, JButton eraserButton) {
-        System.load(Preferences.getOpenCVPath());
+        OpenCVRuntime.ensureLoaded();
         this.eraserButton = eraserButton;
-        image = Imgcodecs.imread(imagePath);
-        background = image.clone();
-        bufferedImage = matToBufferedImage(image);
+        this.imageFile = new File(imagePath);
+        image = MatScope.track(Imgcodecs.imread(imagePath));
+        background = MatScope.track(image.clone());
+        history = new TileHistory(image);
+        drawingLog = new DrawingLog(image.width(), image.height());
+        bufferedImage = ImageBridge.toBufferedImage(image, bufferedImage);
+        pyramid = new ImagePyramid(image, bufferedImage);
 
     addMouseListener(new MouseAdapter() {
         @Override
         public void mousePressed(MouseEvent e) {
+            // El botón derecho desplaza la vista, el izquierdo dibuja
+            if (!SwingUtilities.isLeftMouseButton(e)) {
+                panStart = e.getPoint();
+                return;
+            }
             startPoint = convertMousePointToImage(e.getPoint());
             saveState();
         }
 
         @Override
         public void mouseReleased(MouseEvent e) {
+            if (panStart != null) {
+                panStart = null;
+                return;
+            }
+            if (startPoint == null) {
+                return;
+            }
             if (drawingRectangle) {
                 drawRectangle();
             } else if (drawingCircle) {
                 drawCircle();
             }
+            if (history.commit()) {
+                drawingLog.commit();
+            } else {
+                drawingLog.discard();
+            }
             startPoint = null;
             endPoint = null;
+            updateOverlay();
         }
     });
     
     addMouseMotionListener(new MouseMotionAdapter() {
         @Override
         public void mouseDragged(MouseEvent e) {
+            if (panStart != null) {
+                pan(e.getX() - panStart.x, e.getY() - panStart.y);
+                panStart = e.getPoint();
+                return;
+            }
+            if (startPoint == null) {
+                return;
+            }
             endPoint = convertMousePointToImage(e.getPoint());
 
             if (!drawingRectangle && !drawingCircle) {
-                Scalar color = eraserMode ? getBackgroundColor(startPoint) : new Scalar(
-                        currentColor.getBlue(), currentColor.getGreen(), currentColor.getRed());
-                Imgproc.line(image, new org.opencv.core.Point(startPoint.x, startPoint.y),
-                             new org.opencv.core.Point(endPoint.x, endPoint.y), color, thickness);
+                DrawingCommand stroke = drawingLog.getCurrent(eraserMode ? DrawingCommand.Type.ERASE
+                        : DrawingCommand.Type.STROKE, getColorBGR(), thickness);
+                if (stroke.getPointCount() == 0) {
+                    stroke.addPoint(startPoint.x, startPoint.y);
+                }
+                stroke.addPoint(endPoint.x, endPoint.y);
+
+                Rect dirty = getStrokeBounds(startPoint, endPoint);
+                history.touch(dirty);
+                Point from = new Point(startPoint.x, startPoint.y);
+                Point to = new Point(endPoint.x, endPoint.y);
+                if (eraserMode) {
+                    // Se restauran los píxeles originales que quedan bajo el pincel
+                    DrawingCommand.erase(image, background, from, to, thickness);
+                } else {
+                    Imgproc.line(image, from, to, new Scalar(
+                            currentColor.getBlue(), currentColor.getGreen(), currentColor.getRed()), thickness);
+                }
                 startPoint = endPoint;
+                refresh(dirty);
+            } else {
+                // La figura solo se dibuja encima de la vista hasta soltar el ratón
+                updateOverlay();
             }
-
-            bufferedImage = matToBufferedImage(image);
-            repaint();
         }
     });
 
+    addMouseWheelListener(e -> zoom(Math.pow(1.25, -e.getPreciseWheelRotation()), e.getPoint()));
+
     }
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
 
-        if (bufferedImage != null) {
-            int panelWidth = getWidth();
-            int panelHeight = getHeight();
-            int imgWidth = bufferedImage.getWidth();
-            int imgHeight = bufferedImage.getHeight();
+        if (pyramid != null) {
+            if (fitToWindow) {
+                int panelWidth = getWidth();
+                int panelHeight = getHeight();
+                int imgWidth = bufferedImage.getWidth();
+                int imgHeight = bufferedImage.getHeight();
+
+                // Calcular escala y mantener proporción
+                scaleX = (double) panelWidth / imgWidth;
+                scaleY = (double) panelHeight / imgHeight;
+                scale = Math.min(scaleX, scaleY);
 
-            // Calcular escala y mantener proporción
-            scaleX = (double) panelWidth / imgWidth;
-            scaleY = (double) panelHeight / imgHeight;
-            scale = Math.min(scaleX, scaleY);
+                newWidth = (int) (imgWidth * scale);
+                newHeight = (int) (imgHeight * scale);
 
-            newWidth = (int) (imgWidth * scale);
-            newHeight = (int) (imgHeight * scale);
+                offsetX = (panelWidth - newWidth) / 2;
+                offsetY = (panelHeight - newHeight) / 2;
+            }
 
-            offsetX = (panelWidth - newWidth) / 2;
-            offsetY = (panelHeight - newHeight) / 2;
+            // Solo se dibujan las teselas visibles del nivel de la pirámide que toca
+            Graphics2D g2 = (Graphics2D) g;
+            g2.setRenderingHint(RenderingHints.KEY_INTERPOLATION, scale > 1
+                    ? RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR : RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            Rectangle clip = g.getClipBounds();
+            pyramid.paint(g2, scale, offsetX, offsetY, clip != null ? clip : new Rectangle(getSize()));
+            paintOverlay(g2);
+        }
+    }
 
-            // Dibujar la imagen escalada y centrada
-            g.drawImage(bufferedImage, offsetX, offsetY, newWidth, newHeight, this);
+    /**
+     * Dibuja con Java2D la figura que se está arrastrando en modo rectángulo o círculo,
+     * sin tocar la imagen.
+     *
+     * @param g2 Contexto gráfico del panel.
+     */
+    private void paintOverlay(Graphics2D g2) {
+        Rect shape = getOverlayShape();
+        if (shape == null) {
+            return;
+        }
+        g2.setColor(currentColor);
+        g2.setStroke(new BasicStroke((float) Math.max(1, thickness * scale)));
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        int x = (int) Math.round(offsetX + (shape.x + 0.5) * scale);
+        int y = (int) Math.round(offsetY + (shape.y + 0.5) * scale);
+        int width = (int) Math.round(shape.width * scale);
+        int height = (int) Math.round(shape.height * scale);
+        if (drawingCircle) {
+            g2.drawOval(x, y, width, height);
+        } else {
+            g2.drawRect(x, y, width, height);
+        }
+    }
+
+    /**
+     * Obtiene la figura que se está arrastrando, en coordenadas de la imagen: el
+     * rectángulo entre los dos puntos o el cuadrado que contiene al círculo.
+     *
+     * @return Figura, o null si no se está arrastrando ninguna.
+     */
+    private Rect getOverlayShape() {
+        if (startPoint == null || endPoint == null || (!drawingRectangle && !drawingCircle)) {
+            return null;
+        }
+        if (drawingCircle) {
+            int radius = (int) Math.sqrt(Math.pow(endPoint.x - startPoint.x, 2) + Math.pow(endPoint.y - startPoint.y, 2));
+            return new Rect(startPoint.x - radius, startPoint.y - radius, 2 * radius, 2 * radius);
         }
+        return new Rect(Math.min(startPoint.x, endPoint.x), Math.min(startPoint.y, endPoint.y),
+                Math.abs(endPoint.x - startPoint.x), Math.abs(endPoint.y - startPoint.y));
+    }
+
+    /**
+     * Repinta la zona donde estaba la figura arrastrada y la zona donde está ahora.
+     */
+    private void updateOverlay() {
+        if (overlayBounds != null) {
+            repaint(overlayBounds);
+        }
+        Rect shape = getOverlayShape();
+        overlayBounds = null;
+        if (shape != null) {
+            int margin = thickness + 1;
+            overlayBounds = toPanelBounds(new Rect(shape.x - margin, shape.y - margin,
+                    shape.width + 2 * margin + 1, shape.height + 2 * margin + 1));
+            repaint(overlayBounds);
+        }
+    }
+
+    /**
+     * Convierte una zona de la imagen en la zona del panel donde se muestra.
+     *
+     * @param region Zona en coordenadas de la imagen.
+     * @return Zona del panel, con un píxel de margen para cubrir el redondeo del escalado.
+     */
+    private Rectangle toPanelBounds(Rect region) {
+        int x = (int) Math.floor(offsetX + region.x * scale) - 1;
+        int y = (int) Math.floor(offsetY + region.y * scale) - 1;
+        int width = (int) Math.ceil(region.width * scale) + 3;
+        int height = (int) Math.ceil(region.height * scale) + 3;
+        return new Rectangle(x, y, width, height);
+    }
+
+    /**
+     * Cambia el zoom manteniendo fijo el punto de la imagen que está bajo el cursor.
+     *
+     * @param factor Factor por el que se multiplica el zoom actual.
+     * @param anchor Punto del panel que no se mueve.
+     */
+    public void zoom(double factor, java.awt.Point anchor) {
+        double newScale = Math.max(minZoom, Math.min(maxZoom, scale * factor));
+        double imgX = (anchor.x - offsetX) / scale;
+        double imgY = (anchor.y - offsetY) / scale;
+        scale = newScale;
+        offsetX = (int) Math.round(anchor.x - imgX * scale);
+        offsetY = (int) Math.round(anchor.y - imgY * scale);
+        fitToWindow = false;
+        repaint();
+    }
+
+    /**
+     * Desplaza la vista.
+     *
+     * @param dx Desplazamiento horizontal en píxeles del panel.
+     * @param dy Desplazamiento vertical en píxeles del panel.
+     */
+    public void pan(int dx, int dy) {
+        offsetX += dx;
+        offsetY += dy;
+        fitToWindow = false;
+        repaint();
+    }
+
+    /**
+     * Vuelve a ajustar la imagen completa al tamaño del panel.
+     */
+    public void fitToWindow() {
+        fitToWindow = true;
+        repaint();
     }
     
+    /**
+     * Actualiza una zona de la imagen mostrada después de dibujar en ella y repinta solo
+     * la parte del panel que le corresponde.
+     *
+     * @param dirty Zona modificada de la imagen, o null si no ha cambiado nada.
+     */
+    private void refresh(Rect dirty) {
+        if (dirty == null) {
+            return;
+        }
+        pyramid.update(dirty);
+        repaint(toPanelBounds(dirty));
+    }
+
     private java.awt.Point convertMousePointToImage(java.awt.Point panelPoint) {
-        int imgX = (int) ((panelPoint.x - offsetX) / scale);
-        int imgY = (int) ((panelPoint.y - offsetY) / scale);
+        int imgX = (int) Math.floor((panelPoint.x - offsetX) / scale);
+        int imgY = (int) Math.floor((panelPoint.y - offsetY) / scale);
 
         // Asegurar que las coordenadas están dentro de los límites de la imagen
         imgX = Math.max(0, Math.min(imgX, image.width() - 1));
@@ -123,37 +325,41 @@ public class OpenCVDrawing extends JPanel {
 
 
 
+    
     /**
-     * Convierte una imagen de OpenCV (Mat) a BufferedImage.
-     * 
-     * @param mat Imagen de OpenCV.
-     * @return Imagen convertida a BufferedImage.
+     * Empieza una operación nueva en el historial para permitir deshacer cambios.
+     * No se copia nada todavía: cada trazo guarda solo las teselas que va a modificar.
      */
-    private BufferedImage matToBufferedImage(Mat mat) {
-         Mat rgbMat = new Mat();
-        Imgproc.cvtColor(mat, rgbMat, Imgproc.COLOR_BGR2RGB); // Convertir de BGR a RGB
-
-        int width = rgbMat.width();
-        int height = rgbMat.height();
-        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
-        byte[] data = new byte[width * height * (int) rgbMat.elemSize()];
-        rgbMat.get(0, 0, data);
-        image.getRaster().setDataElements(0, 0, width, height, data);
-        return image;
+    private void saveState() {
+        history.begin();
     }
 
-    private Scalar getBackgroundColor(java.awt.Point point) {
-        double[] bgColor = background.get(point.y, point.x);
-        return new Scalar(bgColor);
+    /**
+     * Calcula la zona de la imagen que ocupa un trazo entre dos puntos, incluyendo el
+     * grosor del pincel.
+     *
+     * @param from Punto inicial.
+     * @param to Punto final.
+     * @return Rectángulo que contiene el trazo.
+     */
+    private Rect getStrokeBounds(java.awt.Point from, java.awt.Point to) {
+        int margin = thickness + 1;
+        int x = Math.min(from.x, to.x) - margin;
+        int y = Math.min(from.y, to.y) - margin;
+        return new Rect(x, y, Math.abs(to.x - from.x) + 2 * margin + 1, Math.abs(to.y - from.y) + 2 * margin + 1);
     }
-    
-    
+
     /**
-     * Guarda el estado actual de la imagen para permitir deshacer cambios.
+     * Libera la memoria nativa de la imagen, el fondo y el historial.
+     * Se llama al cerrar la ventana de dibujo.
      */
-    private void saveState() {
-        undoStack.push(image.clone());
-        redoStack.clear();
+    public void releaseResources() {
+        history.clear();
+        pyramid.release();
+        pyramid = null;
+        MatScope.release(image);
+        MatScope.release(background);
+        bufferedImage = null;
     }
 
     
@@ -161,24 +367,23 @@ public class OpenCVDrawing extends JPanel {
      * Deshace la última acción realizada sobre la imagen.
      */
     public void undo() {
-        if (!undoStack.isEmpty()) {
-            redoStack.push(image.clone());
-            image = undoStack.pop();
-            bufferedImage = matToBufferedImage(image);
-            repaint();
+        // Solo se restauran las teselas que modificó la última operación
+        Rect changed = history.undo();
+        if (changed != null) {
+            drawingLog.undo();
         }
+        refresh(changed);
     }
 
     /**
      * Rehace la última acción deshecha.
      */
     public void redo() {
-        if (!redoStack.isEmpty()) {
-            undoStack.push(image.clone());
-            image = redoStack.pop();
-            bufferedImage = matToBufferedImage(image);
-            repaint();
+        Rect changed = history.redo();
+        if (changed != null) {
+            drawingLog.redo();
         }
+        refresh(changed);
     }
     /**
      * Cambia entre el modo de dibujo y el modo borrador.
@@ -214,11 +419,16 @@ public class OpenCVDrawing extends JPanel {
      */
     private void drawRectangle() {
         if (startPoint != null && endPoint != null) {
+            DrawingCommand rectangle = drawingLog.getCurrent(DrawingCommand.Type.RECTANGLE, getColorBGR(), thickness);
+            rectangle.addPoint(startPoint.x, startPoint.y);
+            rectangle.addPoint(endPoint.x, endPoint.y);
+
+            Rect dirty = getStrokeBounds(startPoint, endPoint);
+            history.touch(dirty);
             Imgproc.rectangle(image, new org.opencv.core.Point(startPoint.x, startPoint.y),
                     new org.opencv.core.Point(endPoint.x, endPoint.y),
                     new Scalar(currentColor.getBlue(), currentColor.getGreen(), currentColor.getRed()), thickness);
-            bufferedImage = matToBufferedImage(image);
-            repaint();
+            refresh(dirty);
         }
     }
 
@@ -230,13 +440,54 @@ public class OpenCVDrawing extends JPanel {
     private void drawCircle() {
         if (startPoint != null && endPoint != null) {
             int radius = (int) Math.sqrt(Math.pow(endPoint.x - startPoint.x, 2) + Math.pow(endPoint.y - startPoint.y, 2));
+            Rect dirty = getStrokeBounds(new java.awt.Point(startPoint.x - radius, startPoint.y - radius),
+                    new java.awt.Point(startPoint.x + radius, startPoint.y + radius));
+            DrawingCommand circle = drawingLog.getCurrent(DrawingCommand.Type.CIRCLE, getColorBGR(), thickness);
+            circle.addPoint(startPoint.x, startPoint.y);
+            circle.addPoint(endPoint.x, endPoint.y);
+
+            history.touch(dirty);
             Imgproc.circle(image, new org.opencv.core.Point(startPoint.x, startPoint.y),
                     radius, new Scalar(currentColor.getBlue(), currentColor.getGreen(), currentColor.getRed()), thickness);
-            bufferedImage = matToBufferedImage(image);
-            repaint();
+            refresh(dirty);
         }
     }
     
+    /**
+     * Obtiene el color actual en el orden de canales de OpenCV.
+     * @return Componentes azul, verde y rojo.
+     */
+    private int[] getColorBGR() {
+        return new int[] {currentColor.getBlue(), currentColor.getGreen(), currentColor.getRed()};
+    }
+
+    /**
+     * Guarda las operaciones de dibujo junto a la imagen editada, con su mismo nombre y
+     * la extensión ".draw.jsonl" (por ejemplo "foto.jpg" da "foto.draw.jsonl").
+     */
+    public void saveDrawingLog() {
+        String name = imageFile.getName();
+        int dot = name.lastIndexOf('.');
+        String baseName = dot > 0 ? name.substring(0, dot) : name;
+        saveDrawingLog(new File(imageFile.getAbsoluteFile().getParentFile(), baseName + ".draw.jsonl").getPath());
+    }
+
+    /**
+     * Guarda las operaciones de dibujo realizadas para poder aplicarlas a otras imágenes
+     * con {@link DrawingLog}.
+     *
+     * @param path Ruta del fichero JSONL.
+     */
+    public void saveDrawingLog(String path) {
+        try {
+            drawingLog.save(new File(path));
+            JOptionPane.showMessageDialog(this, "Traços desats com: " + path);
+        } catch (IOException ex) {
+            JOptionPane.showMessageDialog(this, "No s'han pogut desar els traços: " + ex.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
     /**
      * Establece el color actual para el dibujo.
      * @param color El nuevo color a utilizar.
@@ -256,14 +507,116 @@ public class OpenCVDrawing extends JPanel {
     
     
     /**
-     * Guarda la imagen editada en la ruta especificada.
+     * Guarda la imagen editada en la ruta especificada, con el formato que indica su
+     * extensión y las opciones por defecto.
      * 
      * @param path Ruta donde se guardará la imagen.
      */
     public void saveImage(String path) {
-        Imgcodecs.imwrite(path, image);
-        JOptionPane.showMessageDialog(this, "Imatge desada com: " + path);
-        mainFrame.setImage(new File(path));
+        saveImage(new File(path), SaveOptions.forFileName(path));
+    }
+
+    /**
+     * Guarda la imagen editada en segundo plano. En el hilo de eventos solo se copia la
+     * imagen; la codificación se hace en otro hilo, que además prepara una vista previa
+     * reducida para la ventana principal, así que no hace falta volver a leer el fichero.
+     *
+     * @param file Fichero de destino.
+     * @param options Formato y compresión.
+     * @return Futuro que se completa, en el hilo de eventos, con la vista previa guardada.
+     */
+    public CompletableFuture<BufferedImage> saveImage(File file, SaveOptions options) {
+        Mat snapshot = MatScope.track(image.clone());
+        CompletableFuture<BufferedImage> result = CompletableFuture.supplyAsync(() -> {
+            try (MatScope scope = new MatScope()) {
+                scope.add(snapshot);
+                MatOfInt params = scope.add(options.toParams());
+                long t = Metrics.start();
+                boolean written = Imgcodecs.imwrite(file.getAbsolutePath(), snapshot, params);
+                Metrics.stop(Metrics.Stage.ENCODE, t);
+                if (!written) {
+                    throw new IllegalStateException("No s'ha pogut desar la imatge: " + file);
+                }
+                return createPreview(snapshot);
+            }
+        }, saveExecutor);
+
+        return result.whenCompleteAsync((preview, ex) -> {
+            if (ex != null) {
+                Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
+                JOptionPane.showMessageDialog(this, cause.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            mainFrame.setImage(preview, file);
+            JOptionPane.showMessageDialog(this, "Imatge desada com: " + file.getPath());
+        }, SwingUtilities::invokeLater);
+    }
+
+    /**
+     * Crea la vista previa de la imagen guardada, reducida si es mayor que la ventana
+     * principal pueda mostrar.
+     *
+     * @param snapshot Imagen guardada.
+     * @return Vista previa.
+     */
+    private static BufferedImage createPreview(Mat snapshot) {
+        double factor = (double) previewSize / Math.max(snapshot.width(), snapshot.height());
+        if (factor >= 1) {
+            return ImageBridge.toBufferedImage(snapshot);
+        }
+        try (MatScope scope = new MatScope()) {
+            Mat small = scope.newMat();
+            Imgproc.resize(snapshot, small, new Size(Math.max(1, Math.round(snapshot.width() * factor)),
+                    Math.max(1, Math.round(snapshot.height() * factor))), 0, 0, Imgproc.INTER_AREA);
+            return ImageBridge.toBufferedImage(small);
+        }
+    }
+
+    /**
+     * Muestra un diálogo para elegir dónde guardar la imagen, el formato y la calidad, y
+     * la guarda en segundo plano.
+     */
+    public void showSaveDialog() {
+        JComboBox<SaveOptions.Format> formatBox = new JComboBox<>(SaveOptions.Format.values());
+        JSlider qualitySlider = new JSlider(0, 100, new SaveOptions().getJpegQuality());
+        JSlider compressionSlider = new JSlider(0, 9, new SaveOptions().getPngCompression());
+        qualitySlider.setMajorTickSpacing(25);
+        qualitySlider.setPaintLabels(true);
+        compressionSlider.setMajorTickSpacing(3);
+        compressionSlider.setPaintLabels(true);
+        compressionSlider.setEnabled(false);
+        formatBox.addActionListener(e -> {
+            boolean png = formatBox.getSelectedItem() == SaveOptions.Format.PNG;
+            qualitySlider.setEnabled(!png);
+            compressionSlider.setEnabled(png);
+        });
+
+        JPanel options = new JPanel(new GridLayout(0, 1));
+        options.add(new JLabel("Format:"));
+        options.add(formatBox);
+        options.add(new JLabel("Qualitat JPEG:"));
+        options.add(qualitySlider);
+        options.add(new JLabel("Compressió PNG:"));
+        options.add(compressionSlider);
+
+        JFileChooser chooser = new JFileChooser("images");
+        chooser.setSelectedFile(new File("images", "saved_image.jpg"));
+        chooser.setAccessory(options);
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+
+        SaveOptions.Format format = (SaveOptions.Format) formatBox.getSelectedItem();
+        File file = chooser.getSelectedFile();
+        String name = file.getName().toLowerCase();
+        boolean hasExtension = format == SaveOptions.Format.PNG ? name.endsWith(".png")
+                : name.endsWith(".jpg") || name.endsWith(".jpeg");
+        if (!hasExtension) {
+            file = new File(file.getParentFile(), file.getName() + format.getExtension());
+        }
+        saveImage(file, new SaveOptions().setFormat(format)
+                .setJpegQuality(qualitySlider.getValue())
+                .setPngCompression(compressionSlider.getValue()));
     }
 
     /**
@@ -282,6 +635,7 @@ public class OpenCVDrawing extends JPanel {
         JButton eraserButton = new JButton("Drawing");
         JButton rectButton = new JButton("Rectangle");
         JButton circleButton = new JButton("Circle");
+        JButton fitButton = new JButton("Fit");
 
         OpenCVDrawing panel = new OpenCVDrawing(imagePath, eraserButton);
         
@@ -301,7 +655,10 @@ public class OpenCVDrawing extends JPanel {
         brushSlider.addChangeListener(e -> panel.setThickness(brushSlider.getValue()));
 
         JButton saveButton = new JButton("Guardar");
-        saveButton.addActionListener(e -> panel.saveImage("images/saved_image.jpg"));
+        saveButton.addActionListener(e -> panel.showSaveDialog());
+
+        JButton logButton = new JButton("Exportar traços");
+        logButton.addActionListener(e -> panel.saveDrawingLog());
         
         
         undoButton.addActionListener(e -> panel.undo());
@@ -309,6 +666,7 @@ public class OpenCVDrawing extends JPanel {
         eraserButton.addActionListener(e -> panel.toggleEraser());
         rectButton.addActionListener(e -> panel.toggleRectangleMode());
         circleButton.addActionListener(e -> panel.toggleCircleMode());
+        fitButton.addActionListener(e -> panel.fitToWindow());
 
         JPanel controls = new JPanel();
         controls.add(undoButton);
@@ -316,17 +674,25 @@ public class OpenCVDrawing extends JPanel {
         controls.add(eraserButton);
         controls.add(rectButton);
         controls.add(circleButton);
+        controls.add(fitButton);
         
         controlPanel.add(colorButton);
         controlPanel.add(new JLabel("Mida del pinzell:"));
         controlPanel.add(brushSlider);
         controlPanel.add(saveButton);
+        controlPanel.add(logButton);
 
         frame.add(controlPanel, BorderLayout.SOUTH);
         frame.add(controls, BorderLayout.NORTH);
         frame.add(panel);
         frame.setSize(800, 600);
         frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        frame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                panel.releaseResources();
+            }
+        });
         frame.setVisible(true);
     }
 }
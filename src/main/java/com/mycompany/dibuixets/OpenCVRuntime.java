@@ -0,0 +1,148 @@
+/**
+ * Carga única de la biblioteca nativa de OpenCV para toda la aplicación.
+ */
+package com.mycompany.dibuixets;
+
+import java.awt.GraphicsEnvironment;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bytedeco.javacpp.Loader;
+import org.bytedeco.opencv.opencv_java;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Clase OpenCVRuntime que carga la biblioteca nativa de OpenCV una sola vez.
+ * La biblioteca se busca en este orden:
+ * <ol>
+ *   <li>La ruta configurada (propiedad "opencv.path" o archivo de preferencias), en
+ *       cualquier sistema operativo.</li>
+ *   <li>Las bibliotecas incluidas en la dependencia org.bytedeco:opencv.</li>
+ *   <li>Si hay entorno gráfico, se pide la ruta al usuario con {@link Preferences}.</li>
+ * </ol>
+ * En un servidor sin entorno gráfico nunca se abre ningún diálogo.
+ */
+public class OpenCVRuntime {
+    private static final Logger logger = Logger.getLogger(OpenCVRuntime.class.getName());
+
+    private static volatile boolean loaded = false;
+
+    private OpenCVRuntime() {
+    }
+
+    /**
+     * Carga la biblioteca nativa de OpenCV si todavía no se ha cargado.
+     * Las llamadas posteriores solo comprueban un indicador.
+     *
+     * @throws UnsatisfiedLinkError Si no se encuentra ninguna biblioteca válida.
+     */
+    public static void ensureLoaded() {
+        if (!loaded) {
+            synchronized (OpenCVRuntime.class) {
+                if (!loaded) {
+                    load();
+                    loaded = true;
+                    logger.info("OpenCV " + Core.VERSION + " cargado");
+                }
+            }
+        }
+    }
+
+    /**
+     * Busca y carga la biblioteca nativa.
+     */
+    private static void load() {
+        String configured = Preferences.getConfiguredOpenCVPath();
+        if (configured != null) {
+            System.load(configured);
+            return;
+        }
+
+        try {
+            Loader.load(opencv_java.class);
+            return;
+        } catch (UnsatisfiedLinkError | RuntimeException ex) {
+            logger.log(Level.FINE, "No se ha podido cargar OpenCV desde org.bytedeco", ex);
+        }
+
+        if (GraphicsEnvironment.isHeadless()) {
+            throw new UnsatisfiedLinkError("No se ha encontrado la biblioteca de OpenCV; "
+                    + "indique su ruta con -Dopencv.path o en data/preferencias.txt");
+        }
+        String chosen = Preferences.getOpenCVPath();
+        if (chosen == null) {
+            throw new UnsatisfiedLinkError("No se ha seleccionado la biblioteca de OpenCV");
+        }
+        System.load(chosen);
+    }
+
+    /**
+     * Carga la biblioteca y ejecuta una vez las operaciones más usadas (conversión de
+     * color, ecualización y redimensionado) para que la primera operación real no pague
+     * la inicialización de OpenCV. El clasificador de rostros no se carga aquí porque es
+     * propio de cada hilo; ver {@link #warmUpCascade()}.
+     */
+    public static void warmUp() {
+        ensureLoaded();
+        Mat color = new Mat(256, 256, CvType.CV_8UC3, new Scalar(128, 128, 128));
+        Mat gray = new Mat();
+        Mat small = new Mat();
+        try {
+            Imgproc.cvtColor(color, gray, Imgproc.COLOR_BGR2GRAY);
+            Imgproc.equalizeHist(gray, gray);
+            Imgproc.resize(gray, small, new Size(), 0.5, 0.5, Imgproc.INTER_AREA);
+        } catch (RuntimeException ex) {
+            logger.log(Level.WARNING, "Error durante el calentamiento de OpenCV", ex);
+        } finally {
+            color.release();
+            gray.release();
+            small.release();
+        }
+    }
+
+    /**
+     * Carga el clasificador de rostros en el hilo actual. Como {@link CascadeRegistry}
+     * guarda un clasificador por hilo, hay que llamarlo desde el hilo que después hará
+     * las detecciones, no desde un hilo de calentamiento que termina enseguida.
+     */
+    public static void warmUpCascade() {
+        ensureLoaded();
+        try {
+            CascadeRegistry.get(CascadeRegistry.FRONTAL_FACE);
+        } catch (IllegalArgumentException ex) {
+            logger.log(Level.WARNING, "Error durante el calentamiento del clasificador", ex);
+        }
+    }
+
+    /**
+     * Ejecuta {@link #warmUp()} en un hilo en segundo plano si la propiedad del sistema
+     * "opencv.warmup" no está desactivada.
+     */
+    public static void warmUpInBackground() {
+        if (!isWarmUpEnabled()) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                warmUp();
+            } catch (UnsatisfiedLinkError ex) {
+                logger.log(Level.SEVERE, null, ex);
+            }
+        }, "opencv-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Indica si está activado el calentamiento con la propiedad del sistema "opencv.warmup".
+     *
+     * @return true salvo que la propiedad valga "false".
+     */
+    public static boolean isWarmUpEnabled() {
+        return Boolean.parseBoolean(System.getProperty("opencv.warmup", "true"));
+    }
+}
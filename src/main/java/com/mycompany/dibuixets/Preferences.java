@@ -12,6 +12,10 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 public class Preferences {
+
+    /** Preferencias leídas del fichero, cargadas una sola vez. */
+    private static HashMap<String, String> preferencias;
+
     /**
      * Obtiene la ruta de la biblioteca OpenCV desde un archivo de preferencias.
      * Si la ruta no existe o no es válida, solicita al usuario que seleccione una nueva ubicación.
@@ -19,12 +23,60 @@ public class Preferences {
      * @return La ruta del archivo OpenCV o null si no se selecciona una nueva ruta válida.
      */
     public static String getOpenCVPath() {
+        String configured = getConfiguredOpenCVPath();
+        if (configured != null) {
+            return configured;
+        }
+        return getNewRoute(new File("data/preferencias.txt"));
+    }
+
+    /**
+     * Obtiene la ruta de la biblioteca OpenCV configurada, sin preguntar al usuario.
+     * Se acepta la propiedad del sistema "opencv.path" o la entrada "opencv" del archivo
+     * de preferencias, siempre que apunte a una biblioteca nativa de OpenCV existente
+     * (.dll, .so o .dylib).
+     *
+     * @return La ruta configurada o null si no hay ninguna válida.
+     */
+    public static String getConfiguredOpenCVPath() {
+        String property = System.getProperty("opencv.path");
+        if (isOpenCVLibrary(property)) {
+            return property;
+        }
+        String path = getPreferencias().get("opencv");
+        return isOpenCVLibrary(path) ? path : null;
+    }
+
+    /**
+     * Comprueba si la ruta apunta a una biblioteca nativa de OpenCV existente.
+     *
+     * @param path Ruta a comprobar.
+     * @return true si la ruta es válida.
+     */
+    private static boolean isOpenCVLibrary(String path) {
+        if (path == null) {
+            return false;
+        }
+        String name = new File(path).getName().toLowerCase();
+        return new File(path).isFile() && name.contains("opencv_java")
+                && (name.endsWith(".dll") || name.endsWith(".dylib") || name.contains(".so"));
+    }
+
+    /**
+     * Lee el archivo de preferencias la primera vez y devuelve su contenido.
+     *
+     * @return Mapa de preferencias, vacío si el archivo no existe.
+     */
+    private static synchronized HashMap<String, String> getPreferencias() {
+        if (preferencias != null) {
+            return preferencias;
+        }
         File preferenciasFolder = new File("data");
         if (!preferenciasFolder.exists()) {
             preferenciasFolder.mkdir();
         }
         File preferenciasFile = new File("data/preferencias.txt");
-        HashMap<String, String> preferencias = new HashMap<>();
+        preferencias = new HashMap<>();
 
         if (preferenciasFile.exists()) {
             try (BufferedReader br = new BufferedReader(new FileReader(preferenciasFile))) {
@@ -35,20 +87,11 @@ public class Preferences {
                         preferencias.put(parts[0], parts[1]);
                     }
                 }
-                if (preferencias.containsKey("opencv") && preferencias.get("opencv").endsWith("opencv_java490.dll")) {
-                    try {
-                        File file = new File(preferencias.get("opencv"));
-                        return preferencias.get("opencv");
-                    } catch (Exception e) {
-                        getNewRoute(preferenciasFile);
-                    }
-                }
             } catch (Exception ex) {
                 Logger.getLogger(Preferences.class.getName()).log(Level.SEVERE, null, ex);
             }
         }
-        
-        return getNewRoute(preferenciasFile);
+        return preferencias;
     }
     
     /**
@@ -58,7 +101,7 @@ public class Preferences {
      * @param preferenciasFile Archivo donde se guardarán las preferencias.
      * @return La nueva ruta seleccionada o null si no se selecciona ninguna.
      */
-    private static String getNewRoute(File preferenciasFile) {
+    private static synchronized String getNewRoute(File preferenciasFile) {
         JDialog dialog = new JDialog();
         dialog.setAlwaysOnTop(true);
         JOptionPane.showMessageDialog(dialog, "No se ha encontrado la ruta de OpenCV o no es válida. Por favor, seleccione la carpeta de OpenCV.", "Error", JOptionPane.ERROR_MESSAGE);
@@ -78,6 +121,7 @@ public class Preferences {
             } catch (IOException ex) {
                 Logger.getLogger(Preferences.class.getName()).log(Level.SEVERE, null, ex);
             }
+            getPreferencias().put("opencv", opencvPath);
             
             return opencvPath;
         }
@@ -0,0 +1,113 @@
+/**
+ * Parámetros con los que se guarda una imagen.
+ */
+package com.mycompany.dibuixets;
+
+import org.opencv.core.MatOfInt;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * Clase SaveOptions que agrupa el formato de salida y sus parámetros de compresión:
+ * la calidad para JPEG y el nivel de compresión para PNG.
+ * Los métodos "set" devuelven la propia instancia para poder encadenarlos.
+ */
+public class SaveOptions {
+
+    /** Formatos de salida admitidos. */
+    public enum Format {
+        JPEG(".jpg"),
+        PNG(".png");
+
+        private final String extension;
+
+        Format(String extension) {
+            this.extension = extension;
+        }
+
+        /**
+         * Obtiene la extensión del formato.
+         * @return Extensión con el punto, por ejemplo ".jpg".
+         */
+        public String getExtension() {
+            return extension;
+        }
+    }
+
+    private Format format = Format.JPEG;
+    private int jpegQuality = 95;
+    private int pngCompression = 3;
+
+    /**
+     * Deduce el formato a partir de la extensión de un fichero.
+     *
+     * @param fileName Nombre del fichero.
+     * @return Opciones por defecto del formato; JPEG si la extensión no es .png.
+     */
+    public static SaveOptions forFileName(String fileName) {
+        return new SaveOptions().setFormat(fileName.toLowerCase().endsWith(".png") ? Format.PNG : Format.JPEG);
+    }
+
+    /**
+     * Obtiene el formato de salida.
+     * @return Formato.
+     */
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * Establece el formato de salida.
+     * @param format Formato.
+     * @return Esta misma instancia.
+     */
+    public SaveOptions setFormat(Format format) {
+        this.format = format;
+        return this;
+    }
+
+    /**
+     * Obtiene la calidad JPEG.
+     * @return Calidad entre 0 y 100.
+     */
+    public int getJpegQuality() {
+        return jpegQuality;
+    }
+
+    /**
+     * Establece la calidad JPEG.
+     * @param jpegQuality Calidad entre 0 y 100; se recorta a ese rango.
+     * @return Esta misma instancia.
+     */
+    public SaveOptions setJpegQuality(int jpegQuality) {
+        this.jpegQuality = Math.max(0, Math.min(100, jpegQuality));
+        return this;
+    }
+
+    /**
+     * Obtiene el nivel de compresión PNG.
+     * @return Nivel entre 0 (sin compresión, más rápido) y 9.
+     */
+    public int getPngCompression() {
+        return pngCompression;
+    }
+
+    /**
+     * Establece el nivel de compresión PNG.
+     * @param pngCompression Nivel entre 0 y 9; se recorta a ese rango.
+     * @return Esta misma instancia.
+     */
+    public SaveOptions setPngCompression(int pngCompression) {
+        this.pngCompression = Math.max(0, Math.min(9, pngCompression));
+        return this;
+    }
+
+    /**
+     * Convierte las opciones en los parámetros de Imgcodecs.imwrite.
+     * @return Parámetros del formato elegido. Debe liberarlos quien los recibe.
+     */
+    public MatOfInt toParams() {
+        return format == Format.PNG
+                ? new MatOfInt(Imgcodecs.IMWRITE_PNG_COMPRESSION, pngCompression)
+                : new MatOfInt(Imgcodecs.IMWRITE_JPEG_QUALITY, jpegQuality);
+    }
+}
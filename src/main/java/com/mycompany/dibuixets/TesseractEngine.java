@@ -0,0 +1,126 @@
+/**
+ * Motor de Tesseract inicializado una sola vez y reutilizable.
+ */
+package com.mycompany.dibuixets;
+
+import com.sun.jna.Pointer;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.File;
+import java.nio.ByteBuffer;
+import net.sourceforge.tess4j.ITessAPI.TessBaseAPI;
+import net.sourceforge.tess4j.TessAPI1;
+import net.sourceforge.tess4j.TesseractException;
+
+/**
+ * Clase TesseractEngine que envuelve una instancia nativa de Tesseract ya inicializada
+ * con un idioma y un modo de segmentación de página.
+ * La clase Tesseract de tess4j vuelve a inicializar el motor nativo (y a cargar los
+ * datos del idioma) en cada llamada a doOCR; esta clase lo hace una sola vez en el
+ * constructor. Una instancia no debe usarse desde dos hilos a la vez; para eso está
+ * {@link TesseractPool}.
+ */
+public class TesseractEngine implements AutoCloseable {
+
+    /** Carpeta con los datos de idioma de Tesseract. */
+    static final String tessdataPath = "tessdata";
+
+    private final TessBaseAPI handle;
+    private final String language;
+    private final int pageSegMode;
+
+    /**
+     * Constructor de TesseractEngine.
+     *
+     * @param language Idiomas de Tesseract, por ejemplo "eng" o "spa+cat".
+     * @param pageSegMode Modo de segmentación de página (ver ITessAPI.TessPageSegMode).
+     * @throws TesseractException Si no se puede inicializar el motor.
+     */
+    public TesseractEngine(String language, int pageSegMode) throws TesseractException {
+        this.language = language;
+        this.pageSegMode = pageSegMode;
+        handle = TessAPI1.TessBaseAPICreate();
+        if (TessAPI1.TessBaseAPIInit3(handle, new File(tessdataPath).getAbsolutePath(), language) != 0) {
+            TessAPI1.TessBaseAPIDelete(handle);
+            throw new TesseractException();
+        }
+        TessAPI1.TessBaseAPISetPageSegMode(handle, pageSegMode);
+    }
+
+    /**
+     * Reconoce el texto de una imagen.
+     * Las imágenes en escala de grises de 8 bits se pasan a Tesseract sin conversión.
+     *
+     * @param image Imagen a reconocer.
+     * @return Texto reconocido.
+     */
+    public String recognize(BufferedImage image) {
+        BufferedImage gray = toByteGray(image);
+        int width = gray.getWidth();
+        int height = gray.getHeight();
+        byte[] pixels = ((DataBufferByte) gray.getRaster().getDataBuffer()).getData();
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(width * height);
+        buffer.put(pixels, 0, width * height).flip();
+        TessAPI1.TessBaseAPISetImage(handle, buffer, width, height, 1, width);
+
+        Pointer text = TessAPI1.TessBaseAPIGetUTF8Text(handle);
+        try {
+            return text != null ? text.getString(0, "UTF-8") : "";
+        } finally {
+            if (text != null) {
+                TessAPI1.TessDeleteText(text);
+            }
+            TessAPI1.TessBaseAPIClear(handle);
+        }
+    }
+
+    /**
+     * Devuelve la imagen como escala de grises de 8 bits con el raster empezando en el
+     * origen, convirtiéndola solo si hace falta.
+     *
+     * @param image Imagen original.
+     * @return Imagen TYPE_BYTE_GRAY.
+     */
+    private static BufferedImage toByteGray(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_BYTE_GRAY
+                && image.getRaster().getSampleModelTranslateX() == 0
+                && image.getRaster().getSampleModelTranslateY() == 0) {
+            return image;
+        }
+        BufferedImage gray = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = gray.createGraphics();
+        try {
+            g.drawImage(image, 0, 0, null);
+        } finally {
+            g.dispose();
+        }
+        return gray;
+    }
+
+    /**
+     * Obtiene los idiomas del motor.
+     * @return Idiomas de Tesseract.
+     */
+    public String getLanguage() {
+        return language;
+    }
+
+    /**
+     * Obtiene el modo de segmentación de página del motor.
+     * @return Modo de segmentación.
+     */
+    public int getPageSegMode() {
+        return pageSegMode;
+    }
+
+    /**
+     * Libera el motor nativo.
+     */
+    @Override
+    public void close() {
+        TessAPI1.TessBaseAPIEnd(handle);
+        TessAPI1.TessBaseAPIDelete(handle);
+    }
+}
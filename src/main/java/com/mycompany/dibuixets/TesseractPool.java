@@ -0,0 +1,144 @@
+/**
+ * Grupo acotado de motores de Tesseract reutilizables.
+ */
+package com.mycompany.dibuixets;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import net.sourceforge.tess4j.ITessAPI;
+import net.sourceforge.tess4j.TesseractException;
+
+/**
+ * Clase TesseractPool que mantiene, para cada combinación de idiomas y modo de
+ * segmentación, hasta un motor por núcleo. Los motores se crean la primera vez que
+ * se necesitan (o todos de golpe con {@link #prestart()}) y después se reutilizan, así
+ * que cada llamada de OCR solo paga el reconocimiento. Si todos los motores están
+ * ocupados, la llamada espera a que se libere uno.
+ */
+public class TesseractPool {
+
+    /** Idioma por defecto. */
+    public static final String DEFAULT_LANGUAGE = "eng";
+
+    /** Modo de segmentación por defecto: segmentación automática. */
+    public static final int DEFAULT_PAGE_SEG_MODE = ITessAPI.TessPageSegMode.PSM_AUTO;
+
+    private static final Map<String, TesseractPool> pools = new ConcurrentHashMap<>();
+
+    private final String language;
+    private final int pageSegMode;
+    private final int maxEngines;
+    private final BlockingQueue<TesseractEngine> idle;
+    private final AtomicInteger created = new AtomicInteger();
+
+    /**
+     * Interfaz para el trabajo que se hace con un motor prestado.
+     *
+     * @param <T> Tipo del resultado.
+     */
+    public interface EngineTask<T> {
+        T run(TesseractEngine engine) throws TesseractException;
+    }
+
+    private TesseractPool(String language, int pageSegMode, int maxEngines) {
+        this.language = language;
+        this.pageSegMode = pageSegMode;
+        this.maxEngines = maxEngines;
+        this.idle = new ArrayBlockingQueue<>(maxEngines);
+    }
+
+    /**
+     * Obtiene el grupo de motores con el idioma y modo por defecto.
+     * @return Grupo de motores compartido.
+     */
+    public static TesseractPool getDefault() {
+        return get(DEFAULT_LANGUAGE, DEFAULT_PAGE_SEG_MODE);
+    }
+
+    /**
+     * Obtiene el grupo de motores para unos idiomas y un modo de segmentación.
+     *
+     * @param language Idiomas de Tesseract, por ejemplo "eng" o "spa+cat".
+     * @param pageSegMode Modo de segmentación de página (ver ITessAPI.TessPageSegMode).
+     * @return Grupo de motores compartido para esa configuración.
+     */
+    public static TesseractPool get(String language, int pageSegMode) {
+        return pools.computeIfAbsent(language + "|" + pageSegMode,
+                k -> new TesseractPool(language, pageSegMode, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Crea ya todos los motores del grupo, para que ninguna llamada pague la inicialización.
+     *
+     * @throws TesseractException Si no se puede inicializar algún motor.
+     */
+    public void prestart() throws TesseractException {
+        while (created.get() < maxEngines) {
+            TesseractEngine engine = tryCreate();
+            if (engine != null) {
+                idle.offer(engine);
+            }
+        }
+    }
+
+    /**
+     * Ejecuta un trabajo con un motor del grupo y lo devuelve al terminar.
+     *
+     * @param <T> Tipo del resultado.
+     * @param task Trabajo a ejecutar.
+     * @return Resultado del trabajo.
+     * @throws TesseractException Si falla la inicialización del motor o el trabajo.
+     * @throws InterruptedException Si se interrumpe la espera de un motor libre.
+     */
+    public <T> T withEngine(EngineTask<T> task) throws TesseractException, InterruptedException {
+        TesseractEngine engine = borrow();
+        try {
+            return task.run(engine);
+        } finally {
+            idle.offer(engine);
+        }
+    }
+
+    /**
+     * Obtiene un motor libre, creándolo si aún no se ha llegado al máximo o esperando
+     * a que otro hilo devuelva uno.
+     *
+     * @return Motor listo para usar.
+     */
+    private TesseractEngine borrow() throws TesseractException, InterruptedException {
+        TesseractEngine engine = idle.poll();
+        if (engine == null) {
+            engine = tryCreate();
+        }
+        return engine != null ? engine : idle.take();
+    }
+
+    /**
+     * Crea un motor nuevo si todavía no se ha alcanzado el máximo.
+     *
+     * @return Motor nuevo, o null si ya están todos creados.
+     */
+    private TesseractEngine tryCreate() throws TesseractException {
+        if (created.incrementAndGet() > maxEngines) {
+            created.decrementAndGet();
+            return null;
+        }
+        try {
+            return new TesseractEngine(language, pageSegMode);
+        } catch (TesseractException | RuntimeException ex) {
+            created.decrementAndGet();
+            throw ex;
+        }
+    }
+
+    /**
+     * Obtiene el número máximo de motores del grupo.
+     * @return Número de motores, igual al número de núcleos.
+     */
+    public int getMaxEngines() {
+        return maxEngines;
+    }
+}
@@ -1,14 +1,30 @@
 package com.mycompany.dibuixets;
 
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.imageio.ImageIO;
-import net.sourceforge.tess4j.Tesseract;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import net.sourceforge.tess4j.ITessAPI;
 import net.sourceforge.tess4j.TesseractException;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfByte;
+import org.opencv.core.Rect;
+import org.opencv.core.Scalar;
 import org.opencv.core.Size;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.imgproc.Imgproc;
@@ -18,7 +34,49 @@ import org.opencv.imgproc.Imgproc;
  */
 public class TextRecognition {
 
-    private static Tesseract ts;
+    /** Carpeta donde se guardan los textos reconocidos. */
+    private static final File textFolder = new File("SavedText");
+
+    /** Si las regiones de texto cubren más de esta proporción se reconoce la imagen completa. */
+    private static final double maxRegionCoverage = 0.7;
+
+    /** Hilos que reconocen las regiones de texto en paralelo. */
+    private static final ExecutorService ocrExecutor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), r -> {
+                Thread thread = new Thread(r, "ocr-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /** Altura de carácter en píxeles a la que se escala la imagen antes del OCR. */
+    private static final double targetGlyphHeight = 30;
+
+    /** Límites del factor de escala del OCR. */
+    private static final double minScale = 0.25;
+    private static final double maxScale = 4.0;
+
+    /** Factor de escala cuando no se puede estimar la altura de los caracteres. */
+    private static final double fallbackScale = 1.9;
+
+    /** Diferencia con 1 por debajo de la cual no se escala la imagen. */
+    private static final double scaleTolerance = 0.15;
+
+    /** Altura mínima en píxeles de una componente para considerarla un carácter. */
+    private static final int minGlyphHeight = 4;
+
+    /**
+     * Hilos que reconocen las páginas de un documento. Son distintos de ocrExecutor porque
+     * cada página reparte a su vez sus regiones en ocrExecutor y espera el resultado.
+     */
+    private static final ExecutorService pageExecutor = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), r -> {
+                Thread thread = new Thread(r, "ocr-page");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /** Indica si ya se ha comprobado que existe la carpeta de textos. */
+    private static volatile boolean textFolderReady = false;
 
     /**
      * Obtiene el texto de una imagen utilizando OCR.
@@ -27,73 +85,431 @@ public class TextRecognition {
      * @return Texto extraído de la imagen.
      */
     public static String getTextFromImage(File imageFile) {
+        return getTextFromImage(imageFile, TesseractPool.DEFAULT_LANGUAGE, TesseractPool.DEFAULT_PAGE_SEG_MODE);
+    }
+
+    /**
+     * Obtiene el texto de una imagen utilizando OCR con los idiomas y el modo de
+     * segmentación indicados. Se puede llamar desde varios hilos a la vez: cada llamada
+     * usa un motor distinto de {@link TesseractPool}.
+     *
+     * @param imageFile Archivo de imagen a procesar.
+     * @param language Idiomas de Tesseract, por ejemplo "eng" o "spa+cat".
+     * @param pageSegMode Modo de segmentación de página (ver ITessAPI.TessPageSegMode).
+     * @return Texto extraído de la imagen.
+     */
+    public static String getTextFromImage(File imageFile, String language, int pageSegMode) {
         // Cargar la librería de OpenCV
-        System.load(Preferences.getOpenCVPath());
-        File textFolder = new File("SavedText");
+        OpenCVRuntime.ensureLoaded();
         
-        ts = new Tesseract();
-        ts.setDatapath(new File("tessdata").getAbsolutePath());
-        ts.setLanguage("eng");
+        String text = recognizeTextFromImage(imageFile.getAbsolutePath(), language, pageSegMode);
         
-        if (!textFolder.exists()) {
-            textFolder.mkdir();
+        // Guardar el último texto reconocido
+        File outputFile = new File(getTextFolder(), "analizedText.txt");
+        try {
+            Files.write(outputFile.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            e.printStackTrace();
         }
-        
-        return recognizeTextFromImage(
-            imageFile.getAbsolutePath(),
-            textFolder.getAbsolutePath() + "/analizedText.txt"
-        );
+        return text;
+    }
+
+    /**
+     * Obtiene la carpeta de textos, creándola la primera vez si no existe.
+     *
+     * @return Carpeta de textos reconocidos.
+     */
+    static File getTextFolder() {
+        if (!textFolderReady) {
+            if (!textFolder.exists()) {
+                textFolder.mkdir();
+            }
+            textFolderReady = true;
+        }
+        return textFolder;
     }
 
     /**
      * Realiza el reconocimiento de texto a partir de una imagen.
+     * Ver {@link #recognizeGray(Mat, String, int)}.
      *
      * @param imagePath Ruta de la imagen a analizar.
-     * @param outputTextFilePath Ruta del archivo donde se guardará el texto extraído.
+     * @param language Idiomas de Tesseract.
+     * @param pageSegMode Modo de segmentación de página; con la segmentación automática se
+     *                    reconocen solo las regiones con texto.
      * @return Texto reconocido en la imagen.
      */
-    private static String recognizeTextFromImage(String imagePath, String outputTextFilePath) {
+    private static String recognizeTextFromImage(String imagePath, String language, int pageSegMode) {
         try {
-            BufferedImage image = getImage(imagePath);
-            if (image != null) {
-                // Realizar OCR y obtener el texto
-                return ts.doOCR(image);
-            }
+            return recognizeText(imagePath, language, pageSegMode);
         } catch (TesseractException | IOException e) {
             e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
         return "";
     }
 
+    /**
+     * Reconoce el texto de una imagen propagando los errores, para los procesos por lotes.
+     *
+     * @param imagePath Ruta de la imagen a analizar.
+     * @param language Idiomas de Tesseract.
+     * @param pageSegMode Modo de segmentación de página; con la segmentación automática se
+     *                    reconocen solo las regiones con texto.
+     * @return Texto reconocido en la imagen.
+     * @throws IOException Si no se puede leer la imagen.
+     * @throws TesseractException Si falla el reconocimiento.
+     * @throws InterruptedException Si se interrumpe el hilo.
+     */
+    static String recognizeText(String imagePath, String language, int pageSegMode)
+            throws IOException, TesseractException, InterruptedException {
+        OpenCVRuntime.ensureLoaded();
+        if (isMultiPage(imagePath)) {
+            return recognizeDocument(new File(imagePath), language, pageSegMode);
+        }
+        try (MatScope scope = new MatScope()) {
+            Mat gray = scope.add(readGray(imagePath));
+            if (gray.empty()) {
+                throw new IOException("No se ha podido leer la imagen: " + imagePath);
+            }
+            return recognizeGray(gray, language, pageSegMode);
+        }
+    }
+
+    /**
+     * Reconoce el texto de una imagen ya decodificada en escala de grises.
+     * Con la segmentación automática ({@link TesseractPool#DEFAULT_PAGE_SEG_MODE}) primero
+     * se localizan las regiones con texto ({@link TextRegionDetector}) y solo esas regiones
+     * se escalan y se pasan a Tesseract, en paralelo, cada una como un bloque de texto.
+     * Si no se encuentra ninguna región, o si cubren casi toda la imagen, se reconoce la
+     * imagen completa. Cualquier otro modo se respeta tal cual: la imagen completa se
+     * reconoce con ese modo, sin buscar regiones.
+     *
+     * @param gray Imagen en escala de grises.
+     * @param language Idiomas de Tesseract.
+     * @param pageSegMode Modo de segmentación de página.
+     * @return Texto reconocido en la imagen.
+     * @throws TesseractException Si falla el reconocimiento.
+     * @throws InterruptedException Si se interrumpe el hilo.
+     */
+    static String recognizeGray(Mat gray, String language, int pageSegMode)
+            throws TesseractException, InterruptedException {
+        List<Rect> regions = pageSegMode == TesseractPool.DEFAULT_PAGE_SEG_MODE
+                ? TextRegionDetector.detect(gray) : List.of();
+        String text;
+        if (regions.isEmpty() || getCoverage(regions, gray) > maxRegionCoverage) {
+            text = recognize(TesseractPool.get(language, pageSegMode), preprocess(gray));
+        } else {
+            text = recognizeRegions(gray, regions, TesseractPool.get(language, ITessAPI.TessPageSegMode.PSM_SINGLE_BLOCK));
+        }
+        Metrics.add("ocr.characters", text.length());
+        return text;
+    }
+
+    /**
+     * Interfaz que recibe el texto de cada página de un documento, en orden.
+     */
+    public interface PageListener {
+        void pageRecognized(int page, String text) throws IOException;
+    }
+
+    /**
+     * Indica si un archivo puede tener varias páginas (TIFF).
+     *
+     * @param path Ruta del archivo.
+     * @return true si la extensión es .tif o .tiff.
+     */
+    static boolean isMultiPage(String path) {
+        String name = path.toLowerCase();
+        return name.endsWith(".tif") || name.endsWith(".tiff");
+    }
+
+    /**
+     * Reconoce todas las páginas de un documento y las une separadas por un salto de
+     * página ('\f'), como hace Tesseract.
+     *
+     * @param document Documento de varias páginas, por ejemplo un TIFF.
+     * @param language Idiomas de Tesseract.
+     * @param pageSegMode Modo de segmentación de página.
+     * @return Texto de todas las páginas en orden.
+     * @throws IOException Si no se puede leer el documento.
+     * @throws TesseractException Si falla el reconocimiento.
+     * @throws InterruptedException Si se interrumpe el hilo.
+     */
+    public static String recognizeDocument(File document, String language, int pageSegMode)
+            throws IOException, TesseractException, InterruptedException {
+        StringBuilder sb = new StringBuilder();
+        recognizePages(document, language, pageSegMode, (page, text) -> {
+            if (page > 0) {
+                sb.append('\f');
+            }
+            sb.append(text);
+        });
+        return sb.toString();
+    }
+
+    /**
+     * Reconoce las páginas de un documento en paralelo, entregándolas en orden a medida
+     * que terminan. Las páginas se decodifican de una en una con un ImageReader y como
+     * mucho hay tantas páginas en memoria como motores tiene el grupo de Tesseract, así
+     * que la memoria no depende del número de páginas.
+     *
+     * @param document Documento de varias páginas.
+     * @param language Idiomas de Tesseract.
+     * @param pageSegMode Modo de segmentación de página.
+     * @param listener Recibe el texto de cada página en orden.
+     * @throws IOException Si no se puede leer el documento o falla el listener.
+     * @throws TesseractException Si falla el reconocimiento.
+     * @throws InterruptedException Si se interrumpe el hilo.
+     */
+    public static void recognizePages(File document, String language, int pageSegMode, PageListener listener)
+            throws IOException, TesseractException, InterruptedException {
+        OpenCVRuntime.ensureLoaded();
+        int maxInFlight = TesseractPool.get(language, pageSegMode).getMaxEngines();
+        Deque<Future<String>> pending = new ArrayDeque<>();
+        int delivered = 0;
+
+        try (ImageInputStream input = ImageIO.createImageInputStream(document)) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                throw new IOException("Formato de documento no soportado: " + document);
+            }
+            ImageReader reader = readers.next();
+            try {
+                // Las páginas se leen en orden, así que el lector puede descartar las anteriores
+                reader.setInput(input, true, true);
+                for (int page = 0; ; page++) {
+                    BufferedImage image;
+                    try {
+                        long t = Metrics.start();
+                        image = reader.read(page);
+                        Metrics.stop(Metrics.Stage.DECODE, t);
+                    } catch (IndexOutOfBoundsException e) {
+                        break;
+                    }
+                    Metrics.increment("ocr.pages");
+                    pending.add(pageExecutor.submit(() -> {
+                        try (MatScope scope = new MatScope()) {
+                            return recognizeGray(scope.add(ImageBridge.toGrayMat(image)), language, pageSegMode);
+                        }
+                    }));
+                    if (pending.size() >= maxInFlight) {
+                        listener.pageRecognized(delivered++, await(pending.poll()));
+                    }
+                }
+                while (!pending.isEmpty()) {
+                    listener.pageRecognized(delivered++, await(pending.poll()));
+                }
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            for (Future<String> future : pending) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    /**
+     * Espera el resultado de una tarea de OCR, propagando sus excepciones.
+     *
+     * @param future Tarea pendiente.
+     * @return Texto reconocido.
+     */
+    private static String await(Future<String> future) throws TesseractException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TesseractException) {
+                throw (TesseractException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Reconoce cada región en paralelo y une los textos en orden de lectura.
+     *
+     * @param gray Imagen completa en escala de grises.
+     * @param regions Regiones de texto en orden de lectura.
+     * @param pool Grupo de motores a utilizar.
+     * @return Texto de todas las regiones, una por línea.
+     * @throws TesseractException Si falla el reconocimiento de alguna región.
+     * @throws InterruptedException Si se interrumpe la espera.
+     */
+    private static String recognizeRegions(Mat gray, List<Rect> regions, TesseractPool pool)
+            throws TesseractException, InterruptedException {
+        List<Future<String>> pending = new ArrayList<>();
+        try (MatScope scope = new MatScope()) {
+            for (Rect region : regions) {
+                BufferedImage crop = preprocess(scope.add(gray.submat(region)));
+                pending.add(ocrExecutor.submit(() -> recognize(pool, crop)));
+            }
+        }
+
+        StringBuilder sb = new StringBuilder();
+        try {
+            for (Future<String> future : pending) {
+                String line = await(future).trim();
+                if (!line.isEmpty()) {
+                    sb.append(line).append('\n');
+                }
+            }
+        } finally {
+            for (Future<String> future : pending) {
+                future.cancel(true);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Reconoce una imagen ya preprocesada con un motor del grupo.
+     *
+     * @param pool Grupo de motores a utilizar.
+     * @param image Imagen preprocesada.
+     * @return Texto reconocido.
+     */
+    private static String recognize(TesseractPool pool, BufferedImage image)
+            throws TesseractException, InterruptedException {
+        long t = Metrics.start();
+        String text = pool.withEngine(engine -> engine.recognize(image));
+        Metrics.stop(Metrics.Stage.OCR, t);
+        return text;
+    }
+
+    /**
+     * Calcula qué proporción de la imagen cubren las regiones. Las regiones ampliadas con
+     * margen pueden solaparse con sus vecinas, así que se pintan en una máscara y se
+     * cuenta la unión en lugar de sumar sus áreas.
+     *
+     * @param regions Regiones de texto.
+     * @param image Imagen completa.
+     * @return Proporción de área cubierta.
+     */
+    private static double getCoverage(List<Rect> regions, Mat image) {
+        try (MatScope scope = new MatScope()) {
+            Mat mask = scope.add(Mat.zeros(image.size(), CvType.CV_8UC1));
+            for (Rect region : regions) {
+                Imgproc.rectangle(mask, region, new Scalar(255), Imgproc.FILLED);
+            }
+            return Core.countNonZero(mask) / ((double) image.width() * image.height());
+        }
+    }
+
     /**
      * Carga y procesa una imagen para mejorar la precisión del OCR.
      *
      * @param imgPath Ruta de la imagen a procesar.
-     * @return Imagen procesada como BufferedImage.
+     * @return Imagen procesada como BufferedImage, o null si no se puede leer.
      * @throws IOException Si ocurre un error al leer la imagen.
      */
-    private static BufferedImage getImage(String imgPath) throws IOException {
-        Mat mat = Imgcodecs.imread(imgPath);
-        if (mat.empty()) {
-            return null;
+    static BufferedImage getImage(String imgPath) throws IOException {
+        try (MatScope scope = new MatScope()) {
+            Mat gray = scope.add(readGray(imgPath));
+            return gray.empty() ? null : preprocess(gray);
         }
+    }
+
+    /**
+     * Lee una imagen decodificándola directamente en escala de grises.
+     *
+     * @param imgPath Ruta de la imagen.
+     * @return Imagen en escala de grises, vacía si no se puede leer. Debe liberarla quien la recibe.
+     */
+    private static Mat readGray(String imgPath) {
+        long t = Metrics.start();
+        Mat gray = MatScope.track(Imgcodecs.imread(imgPath, Imgcodecs.IMREAD_GRAYSCALE));
+        Metrics.stop(Metrics.Stage.DECODE, t);
+        return gray;
+    }
+
+    /**
+     * Escala una imagen en escala de grises para que los caracteres tengan la altura que
+     * mejor reconoce Tesseract. Las imágenes con letra pequeña se amplían y los escaneos
+     * grandes se reducen, de modo que el coste del OCR depende del texto y no de la
+     * resolución original.
+     *
+     * @param gray Imagen o región en escala de grises.
+     * @return Imagen escalada como BufferedImage TYPE_BYTE_GRAY.
+     */
+    static BufferedImage preprocess(Mat gray) {
+        try (MatScope scope = new MatScope()) {
+            long t = Metrics.start();
+            double scale = getOcrScale(gray);
+            Mat resized = gray;
+            if (Math.abs(scale - 1) > scaleTolerance) {
+                resized = scope.newMat();
+                Size size = new Size(Math.max(1, Math.round(gray.width() * scale)),
+                        Math.max(1, Math.round(gray.height() * scale)));
+                Imgproc.resize(gray, resized, size, 0, 0, scale < 1 ? Imgproc.INTER_AREA : Imgproc.INTER_CUBIC);
+            }
+            Metrics.stop(Metrics.Stage.RESIZE, t);
 
-        Mat gray = new Mat();
-        Imgproc.cvtColor(mat, gray, Imgproc.COLOR_BGR2GRAY);
+            // La imagen en grises pasa directamente a un BufferedImage TYPE_BYTE_GRAY
+            return ImageBridge.toBufferedImage(resized);
+        }
+    }
 
-        Mat resized = new Mat();
-        Size size = new Size(mat.width() * 1.9, mat.height() * 1.9);
-        Imgproc.resize(gray, resized, size);
+    /**
+     * Calcula el factor de escala para el OCR a partir de la altura típica de los
+     * caracteres. Si no se encuentra ningún carácter se usa el factor fijo de antes.
+     *
+     * @param gray Imagen en escala de grises.
+     * @return Factor de escala, entre {@link #minScale} y {@link #maxScale}.
+     */
+    static double getOcrScale(Mat gray) {
+        double glyphHeight = estimateGlyphHeight(gray);
+        if (glyphHeight <= 0) {
+            return fallbackScale;
+        }
+        return Math.max(minScale, Math.min(maxScale, targetGlyphHeight / glyphHeight));
+    }
 
-        MatOfByte mof = new MatOfByte();
-        Imgcodecs.imencode(".png", resized, mof);
-        BufferedImage bufferedImage = ImageIO.read(new ByteArrayInputStream(mof.toArray()));
+    /**
+     * Estima la altura dominante de los caracteres como la mediana de la altura de las
+     * componentes conexas de la imagen binarizada. Se descartan las componentes demasiado
+     * pequeñas (ruido, puntos) o demasiado grandes (bordes, dibujos) para ser letras.
+     * El texto puede ser oscuro sobre claro o al revés: se toma como tinta la parte
+     * minoritaria de la imagen.
+     *
+     * @param gray Imagen en escala de grises.
+     * @return Altura estimada en píxeles, o 0 si no se encuentra ningún carácter.
+     */
+    static double estimateGlyphHeight(Mat gray) {
+        try (MatScope scope = new MatScope()) {
+            Mat binary = scope.newMat();
+            Imgproc.threshold(gray, binary, 0, 255, Imgproc.THRESH_BINARY_INV | Imgproc.THRESH_OTSU);
+            if (Core.countNonZero(binary) > binary.total() / 2) {
+                Core.bitwise_not(binary, binary);
+            }
 
-        mat.release();
-        gray.release();
-        resized.release();
-        mof.release();
+            Mat labels = scope.newMat();
+            Mat stats = scope.newMat();
+            Mat centroids = scope.newMat();
+            int count = Imgproc.connectedComponentsWithStats(binary, labels, stats, centroids, 8, CvType.CV_32S);
 
-        return bufferedImage;
+            int maxHeight = Math.max(minGlyphHeight, gray.height() / 2);
+            int[] heights = new int[count];
+            int found = 0;
+            int[] row = new int[Imgproc.CC_STAT_MAX];
+            // La etiqueta 0 es el fondo
+            for (int i = 1; i < count; i++) {
+                stats.get(i, 0, row);
+                int width = row[Imgproc.CC_STAT_WIDTH];
+                int height = row[Imgproc.CC_STAT_HEIGHT];
+                if (height < minGlyphHeight || height > maxHeight || width > height * 4
+                        || row[Imgproc.CC_STAT_AREA] < minGlyphHeight) {
+                    continue;
+                }
+                heights[found++] = height;
+            }
+            if (found == 0) {
+                return 0;
+            }
+            Arrays.sort(heights, 0, found);
+            return heights[found / 2];
+        }
     }
 }
@@ -0,0 +1,126 @@
+/**
+ * Localización de las zonas de una imagen que probablemente contienen texto.
+ */
+package com.mycompany.dibuixets;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.opencv.core.Core;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfPoint;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+
+/**
+ * Clase TextRegionDetector que busca líneas de texto con operaciones morfológicas:
+ * el gradiente morfológico resalta los bordes de los caracteres, un umbral de Otsu los
+ * binariza y un cierre horizontal une los caracteres de una misma línea en un solo
+ * bloque. Cada contorno suficientemente relleno se toma como región de texto.
+ * Las regiones se devuelven en orden de lectura: por filas de arriba abajo y, dentro
+ * de cada fila, de izquierda a derecha.
+ */
+public class TextRegionDetector {
+
+    /** Proporción mínima de píxeles activos dentro de una región para aceptarla. */
+    private static final double minFillRatio = 0.4;
+
+    /** Tamaño mínimo en píxeles de una región. */
+    private static final int minRegionSize = 8;
+
+    /** Margen que se añade alrededor de cada región para no cortar los caracteres. */
+    private static final int padding = 4;
+
+    private TextRegionDetector() {
+    }
+
+    /**
+     * Busca las regiones de texto de una imagen en escala de grises.
+     *
+     * @param gray Imagen en escala de grises de 8 bits.
+     * @return Regiones de texto en orden de lectura.
+     */
+    public static List<Rect> detect(Mat gray) {
+        List<Rect> regions = new ArrayList<>();
+        try (MatScope scope = new MatScope()) {
+            Mat gradient = scope.newMat();
+            Mat kernel = scope.add(Imgproc.getStructuringElement(Imgproc.MORPH_ELLIPSE, new Size(3, 3)));
+            Imgproc.morphologyEx(gray, gradient, Imgproc.MORPH_GRADIENT, kernel);
+
+            Mat binary = scope.newMat();
+            Imgproc.threshold(gradient, binary, 0, 255, Imgproc.THRESH_BINARY | Imgproc.THRESH_OTSU);
+
+            // Unir los caracteres de una línea; el ancho del núcleo crece con la imagen
+            int joinWidth = Math.max(9, gray.width() / 100);
+            Mat lineKernel = scope.add(Imgproc.getStructuringElement(Imgproc.MORPH_RECT, new Size(joinWidth, 1)));
+            Mat joined = scope.newMat();
+            Imgproc.morphologyEx(binary, joined, Imgproc.MORPH_CLOSE, lineKernel);
+
+            List<MatOfPoint> contours = new ArrayList<>();
+            Mat hierarchy = scope.newMat();
+            Imgproc.findContours(joined, contours, hierarchy, Imgproc.RETR_EXTERNAL, Imgproc.CHAIN_APPROX_SIMPLE);
+
+            for (MatOfPoint contour : contours) {
+                Rect rect = Imgproc.boundingRect(scope.add(contour));
+                if (rect.width < minRegionSize || rect.height < minRegionSize) {
+                    continue;
+                }
+                Mat region = scope.add(binary.submat(rect));
+                double fill = (double) Core.countNonZero(region) / rect.area();
+                if (fill >= minFillRatio) {
+                    regions.add(pad(rect, gray.width(), gray.height()));
+                }
+            }
+        }
+        return sortReadingOrder(regions);
+    }
+
+    /**
+     * Amplía un rectángulo con el margen, sin salirse de la imagen.
+     *
+     * @param rect Rectángulo original.
+     * @param width Ancho de la imagen.
+     * @param height Alto de la imagen.
+     * @return Rectángulo ampliado.
+     */
+    private static Rect pad(Rect rect, int width, int height) {
+        int x = Math.max(0, rect.x - padding);
+        int y = Math.max(0, rect.y - padding);
+        int right = Math.min(width, rect.x + rect.width + padding);
+        int bottom = Math.min(height, rect.y + rect.height + padding);
+        return new Rect(x, y, right - x, bottom - y);
+    }
+
+    /**
+     * Ordena las regiones en orden de lectura. Dos regiones están en la misma fila si el
+     * centro vertical de una cae dentro de la altura de la primera región de la fila.
+     *
+     * @param regions Regiones sin ordenar.
+     * @return Regiones ordenadas.
+     */
+    static List<Rect> sortReadingOrder(List<Rect> regions) {
+        List<Rect> byTop = new ArrayList<>(regions);
+        byTop.sort(Comparator.comparingInt(r -> r.y));
+
+        List<Rect> result = new ArrayList<>();
+        List<Rect> row = new ArrayList<>();
+        Rect rowStart = null;
+        for (Rect rect : byTop) {
+            int center = rect.y + rect.height / 2;
+            if (rowStart != null && center > rowStart.y + rowStart.height) {
+                row.sort(Comparator.comparingInt(r -> r.x));
+                result.addAll(row);
+                row.clear();
+                rowStart = null;
+            }
+            if (rowStart == null) {
+                rowStart = rect;
+            }
+            row.add(rect);
+        }
+        row.sort(Comparator.comparingInt(r -> r.x));
+        result.addAll(row);
+        return result;
+    }
+}
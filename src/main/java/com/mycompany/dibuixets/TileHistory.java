@@ -0,0 +1,509 @@
+/**
+ * Historial de deshacer/rehacer por teselas para la aplicación de dibujo.
+ */
+package com.mycompany.dibuixets;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.MatOfInt;
+import org.opencv.core.Rect;
+import org.opencv.imgcodecs.Imgcodecs;
+
+/**
+ * Clase TileHistory que guarda, para cada operación de dibujo, solo las teselas de la
+ * imagen que la operación ha modificado, en lugar de una copia completa de la imagen.
+ *
+ * Antes de pintar sobre una zona se llama a {@link #touch(Rect)}, que copia las teselas
+ * afectadas la primera vez que se tocan dentro de la operación. Deshacer y rehacer
+ * intercambian esas teselas con las de la imagen, así que una misma copia sirve para
+ * ir en los dos sentidos.
+ *
+ * Cuando las teselas en memoria superan el presupuesto, las operaciones más lejanas se
+ * comprimen en PNG y se pasan a un fichero temporal en un hilo de fondo. Al deshacer
+ * hasta una de ellas se vuelve a cargar; para que no se note, después de cada deshacer o
+ * rehacer se carga en segundo plano la siguiente operación de la pila si estaba en disco.
+ * Todos los métodos públicos deben llamarse desde el mismo hilo (el de eventos de Swing).
+ */
+public class TileHistory {
+    private static final Logger logger = Logger.getLogger(TileHistory.class.getName());
+
+    /** Lado en píxeles de cada tesela. */
+    static final int TILE_SIZE = 256;
+
+    /** Presupuesto de memoria por defecto, en MB (propiedad dibuixets.undoMemoryMB). */
+    private static final long defaultBudgetMB = 256;
+
+    /** Compresión PNG de las teselas en disco: rápida, el objetivo es no bloquear. */
+    private static final int pngCompression = 1;
+
+    /** Hilo que comprime y descomprime las operaciones guardadas en disco. */
+    private static final ExecutorService spillExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "undo-spill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Carpetas temporales de los historiales abiertos. deleteOnExit no borra carpetas con
+     * ficheros, así que un único gancho de cierre vacía y borra las que sigan aquí si se
+     * sale de la aplicación con alguna ventana de dibujo abierta.
+     */
+    private static final Set<File> liveSpillFolders = ConcurrentHashMap.newKeySet();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            for (File folder : liveSpillFolders) {
+                deleteFolder(folder);
+            }
+        }, "undo-cleanup"));
+    }
+
+    private final Mat image;
+    private final long maxBytes;
+    private final int columns;
+    private final Deque<Edit> undoStack = new ArrayDeque<>();
+    private final Deque<Edit> redoStack = new ArrayDeque<>();
+    private Edit current;
+    private long bytes;
+    private File spillFolder;
+
+    /**
+     * Operación de dibujo: las teselas que modificó, con el contenido que no está en la
+     * imagen (el anterior si la operación está aplicada, el posterior si está deshecha).
+     * Si la operación está en disco, tiles es null y file apunta al fichero. Mientras
+     * hay una tarea de fondo en marcha (pending) solo ella toca tiles y file.
+     */
+    private static class Edit {
+        final List<Rect> rects = new ArrayList<>();
+        final Set<Integer> touched = new HashSet<>();
+        List<Mat> tiles = new ArrayList<>();
+        File file;
+        Future<?> pending;
+        long bytes;
+
+        boolean inMemory() {
+            return pending == null && tiles != null;
+        }
+    }
+
+    /**
+     * Constructor de TileHistory con el presupuesto de memoria por defecto.
+     *
+     * @param image Imagen que se edita. Se modifica en su sitio al deshacer y rehacer.
+     */
+    public TileHistory(Mat image) {
+        this(image, Long.getLong("dibuixets.undoMemoryMB", defaultBudgetMB) * 1024 * 1024);
+    }
+
+    /**
+     * Constructor de TileHistory.
+     *
+     * @param image Imagen que se edita. Se modifica en su sitio al deshacer y rehacer.
+     * @param maxBytes Memoria máxima que pueden ocupar las teselas guardadas en memoria.
+     */
+    public TileHistory(Mat image, long maxBytes) {
+        this.image = image;
+        this.maxBytes = maxBytes;
+        this.columns = (image.width() + TILE_SIZE - 1) / TILE_SIZE;
+    }
+
+    /**
+     * Empieza una operación nueva. Si había otra sin cerrar, se cierra primero.
+     */
+    public void begin() {
+        commit();
+        current = new Edit();
+    }
+
+    /**
+     * Guarda las teselas de una zona que se va a modificar, si aún no se habían guardado
+     * en la operación actual. Si no hay operación abierta se abre una.
+     *
+     * @param area Zona de la imagen que se va a pintar; puede salirse de la imagen.
+     */
+    public void touch(Rect area) {
+        if (current == null) {
+            current = new Edit();
+        }
+        int x0 = Math.max(0, area.x) / TILE_SIZE;
+        int y0 = Math.max(0, area.y) / TILE_SIZE;
+        int x1 = Math.min(image.width(), area.x + area.width) - 1;
+        int y1 = Math.min(image.height(), area.y + area.height) - 1;
+        if (x1 < 0 || y1 < 0) {
+            return;
+        }
+        for (int ty = y0; ty <= y1 / TILE_SIZE; ty++) {
+            for (int tx = x0; tx <= x1 / TILE_SIZE; tx++) {
+                if (current.touched.add(ty * columns + tx)) {
+                    Rect rect = getTileRect(tx, ty);
+                    Mat tile = MatScope.track(image.submat(rect).clone());
+                    current.rects.add(rect);
+                    current.tiles.add(tile);
+                    long size = tile.total() * tile.elemSize();
+                    current.bytes += size;
+                    bytes += size;
+                }
+            }
+        }
+    }
+
+    /**
+     * Cierra la operación actual y la añade al historial. Las operaciones que no han
+     * tocado ninguna tesela se descartan. Cualquier operación nueva invalida lo que se
+     * podía rehacer.
+     *
+     * @return true si se ha añadido una operación al historial.
+     */
+    public boolean commit() {
+        Edit edit = current;
+        current = null;
+        if (edit == null || edit.tiles.isEmpty()) {
+            return false;
+        }
+        clear(redoStack);
+        undoStack.addLast(edit);
+        trim();
+        return true;
+    }
+
+    /**
+     * Deshace la última operación.
+     *
+     * @return Zona de la imagen que ha cambiado, o null si no había nada que deshacer.
+     */
+    public Rect undo() {
+        commit();
+        return move(undoStack, redoStack);
+    }
+
+    /**
+     * Rehace la última operación deshecha.
+     *
+     * @return Zona de la imagen que ha cambiado, o null si no había nada que rehacer.
+     */
+    public Rect redo() {
+        commit();
+        return move(redoStack, undoStack);
+    }
+
+    /**
+     * Intercambia las teselas de la última operación de una pila con las de la imagen y
+     * la pasa a la otra pila. Después se adelanta la carga de la siguiente operación.
+     */
+    private Rect move(Deque<Edit> from, Deque<Edit> to) {
+        Edit edit = from.pollLast();
+        if (edit == null) {
+            return null;
+        }
+        try {
+            load(edit);
+        } catch (IOException ex) {
+            logger.log(Level.SEVERE, "No se puede recuperar el historial del disco", ex);
+            from.addLast(edit);
+            return null;
+        }
+        Rect changed = null;
+        for (int i = 0; i < edit.tiles.size(); i++) {
+            Rect rect = edit.rects.get(i);
+            Mat target = image.submat(rect);
+            Mat previous = MatScope.track(target.clone());
+            edit.tiles.get(i).copyTo(target);
+            target.release();
+            MatScope.release(edit.tiles.get(i));
+            edit.tiles.set(i, previous);
+            changed = changed == null ? rect.clone() : union(changed, rect);
+        }
+        to.addLast(edit);
+        prefetch(from.peekLast());
+        trim();
+        return changed;
+    }
+
+    /**
+     * Pasa a disco las operaciones más lejanas hasta volver al presupuesto de memoria.
+     * Se empieza por el fondo de la pila de deshacer y después el de rehacer; la última
+     * operación de cada pila se mantiene siempre en memoria.
+     */
+    private void trim() {
+        for (Deque<Edit> stack : List.of(undoStack, redoStack)) {
+            Iterator<Edit> it = stack.iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                Edit edit = it.next();
+                if (edit != stack.peekLast() && edit.inMemory()) {
+                    spill(edit);
+                }
+            }
+        }
+    }
+
+    /**
+     * Comprime una operación y la escribe en disco en el hilo de fondo. La memoria se
+     * descuenta del presupuesto en cuanto se encarga el trabajo.
+     */
+    private void spill(Edit edit) {
+        File folder = getSpillFolder();
+        if (folder == null) {
+            return;
+        }
+        bytes -= edit.bytes;
+        edit.pending = spillExecutor.submit(() -> {
+            File file = File.createTempFile("edit", ".tiles", folder);
+            try (MatScope scope = new MatScope();
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+                MatOfInt params = scope.add(new MatOfInt(Imgcodecs.IMWRITE_PNG_COMPRESSION, pngCompression));
+                MatOfByte encoded = scope.add(new MatOfByte());
+                out.writeInt(edit.tiles.size());
+                for (Mat tile : edit.tiles) {
+                    Imgcodecs.imencode(".png", tile, encoded, params);
+                    byte[] data = encoded.toArray();
+                    out.writeInt(data.length);
+                    out.write(data);
+                }
+            } catch (IOException | RuntimeException ex) {
+                file.delete();
+                throw ex;
+            }
+            for (Mat tile : edit.tiles) {
+                MatScope.release(tile);
+            }
+            edit.tiles = null;
+            edit.file = file;
+            Metrics.increment("undo.spilled");
+            return null;
+        });
+    }
+
+    /**
+     * Empieza a cargar en segundo plano una operación que está en disco.
+     *
+     * @param edit Operación que probablemente se deshará o rehará a continuación, o null.
+     */
+    private void prefetch(Edit edit) {
+        if (edit == null || edit.tiles != null || edit.pending != null) {
+            return;
+        }
+        bytes += edit.bytes;
+        edit.pending = spillExecutor.submit(() -> {
+            edit.tiles = readTiles(edit.file, edit.rects.size());
+            edit.file.delete();
+            edit.file = null;
+            return null;
+        });
+    }
+
+    /**
+     * Se asegura de que las teselas de una operación están en memoria, esperando a la
+     * tarea de fondo si la hay o leyéndolas del disco si no.
+     */
+    private void load(Edit edit) throws IOException {
+        await(edit);
+        if (edit.tiles != null) {
+            return;
+        }
+        // No se había adelantado la carga, o falló: se lee ahora
+        edit.tiles = readTiles(edit.file, edit.rects.size());
+        edit.file.delete();
+        edit.file = null;
+        bytes += edit.bytes;
+        Metrics.increment("undo.restored");
+    }
+
+    /**
+     * Espera a la tarea de fondo de una operación.
+     *
+     * @return true si había una tarea y ha terminado bien.
+     */
+    private boolean await(Edit edit) {
+        Future<?> pending = edit.pending;
+        if (pending == null) {
+            return false;
+        }
+        edit.pending = null;
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    pending.get();
+                    return true;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException ex) {
+            // Si falló el volcado las teselas siguen en memoria; si falló la carga, se reintenta
+            logger.log(Level.WARNING, "Error en el historial en disco", ex.getCause());
+            if (edit.tiles != null) {
+                bytes += edit.bytes;
+            } else if (edit.file != null) {
+                bytes -= edit.bytes;
+            }
+            return false;
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Lee y descomprime las teselas de un fichero del historial.
+     */
+    private static List<Mat> readTiles(File file, int expected) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int count = in.readInt();
+            if (count != expected) {
+                throw new IOException("Fichero de historial corrupto: " + file);
+            }
+            List<Mat> tiles = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                MatOfByte encoded = new MatOfByte(data);
+                tiles.add(MatScope.track(Imgcodecs.imdecode(encoded, Imgcodecs.IMREAD_UNCHANGED)));
+                encoded.release();
+            }
+            return tiles;
+        }
+    }
+
+    /**
+     * Obtiene la carpeta temporal del historial, creándola la primera vez.
+     *
+     * @return Carpeta temporal, o null si no se puede crear (el historial se queda en memoria).
+     */
+    private File getSpillFolder() {
+        if (spillFolder == null) {
+            try {
+                spillFolder = Files.createTempDirectory("dibuixets-undo").toFile();
+                liveSpillFolders.add(spillFolder);
+            } catch (IOException ex) {
+                logger.log(Level.WARNING, "No se puede crear la carpeta temporal del historial", ex);
+            }
+        }
+        return spillFolder;
+    }
+
+    /**
+     * Borra una carpeta temporal del historial con todos sus ficheros.
+     *
+     * @param folder Carpeta a borrar.
+     */
+    private static void deleteFolder(File folder) {
+        File[] files = folder.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        folder.delete();
+    }
+
+    /**
+     * Indica si hay operaciones para deshacer.
+     * @return true si se puede deshacer.
+     */
+    public boolean canUndo() {
+        return !undoStack.isEmpty() || (current != null && !current.tiles.isEmpty());
+    }
+
+    /**
+     * Indica si hay operaciones para rehacer.
+     * @return true si se puede rehacer.
+     */
+    public boolean canRedo() {
+        return !redoStack.isEmpty();
+    }
+
+    /**
+     * Obtiene la memoria que ocupan las teselas guardadas en memoria.
+     * @return Bytes ocupados por el historial, sin contar lo que está en disco.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Libera todo el historial y borra sus ficheros temporales.
+     */
+    public void clear() {
+        if (current != null) {
+            release(current);
+            current = null;
+        }
+        clear(undoStack);
+        clear(redoStack);
+        if (spillFolder != null) {
+            liveSpillFolders.remove(spillFolder);
+            deleteFolder(spillFolder);
+            spillFolder = null;
+        }
+    }
+
+    private void clear(Deque<Edit> stack) {
+        while (!stack.isEmpty()) {
+            release(stack.pollLast());
+        }
+    }
+
+    private void release(Edit edit) {
+        await(edit);
+        if (edit.tiles != null) {
+            for (Mat tile : edit.tiles) {
+                MatScope.release(tile);
+            }
+            edit.tiles = null;
+            bytes -= edit.bytes;
+        }
+        if (edit.file != null) {
+            edit.file.delete();
+            edit.file = null;
+        }
+    }
+
+    /**
+     * Obtiene el rectángulo de una tesela, recortado al borde de la imagen.
+     */
+    private Rect getTileRect(int tx, int ty) {
+        int x = tx * TILE_SIZE;
+        int y = ty * TILE_SIZE;
+        return new Rect(x, y, Math.min(TILE_SIZE, image.width() - x), Math.min(TILE_SIZE, image.height() - y));
+    }
+
+    /**
+     * Calcula el rectángulo que contiene a otros dos.
+     *
+     * @param a Primer rectángulo.
+     * @param b Segundo rectángulo.
+     * @return Unión de los dos rectángulos.
+     */
+    static Rect union(Rect a, Rect b) {
+        int x = Math.min(a.x, b.x);
+        int y = Math.min(a.y, b.y);
+        int right = Math.max(a.x + a.width, b.x + b.width);
+        int bottom = Math.max(a.y + a.height, b.y + b.height);
+        return new Rect(x, y, right - x, bottom - y);
+    }
+}
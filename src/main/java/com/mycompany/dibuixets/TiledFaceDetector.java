@@ -0,0 +1,203 @@
+/**
+ * Detección por teselas para imágenes muy grandes (panorámicas, fotos de grupo escaneadas).
+ */
+package com.mycompany.dibuixets;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfRect;
+import org.opencv.core.Rect;
+import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
+import org.opencv.objdetect.Objdetect;
+
+/**
+ * Clase TiledFaceDetector que divide la imagen en teselas solapadas y las analiza en
+ * paralelo en un ForkJoinPool. Como el solapamiento es igual al tamaño máximo de objeto
+ * buscado en las teselas, cada rostro cabe entero en al menos una tesela. Los rostros
+ * mayores que el solapamiento se buscan en una pasada adicional sobre una copia reducida
+ * de la imagen completa. Los duplicados de las zonas compartidas y de las dos pasadas se
+ * fusionan con {@link NonMaxSuppression}.
+ * La memoria nativa de detectMultiScale queda acotada por el tamaño de la tesela y el de
+ * la copia reducida.
+ */
+public class TiledFaceDetector {
+
+    /** Grupo de hilos compartido por todas las detecciones por teselas. */
+    private static final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+    /** Umbral de solapamiento a partir del cual dos detecciones se fusionan. */
+    private static final double iouThreshold = 0.3;
+
+    /**
+     * Tamaño en píxeles que tiene en la copia reducida un rostro del tamaño del
+     * solapamiento; debe quedar por encima de la ventana del clasificador (24 px).
+     */
+    private static final int fullFrameWindow = 48;
+
+    private final int tileSize;
+    private final int overlap;
+
+    /**
+     * Constructor de TiledFaceDetector.
+     *
+     * @param tileSize Lado de cada tesela en píxeles.
+     * @param overlap Solapamiento entre teselas vecinas, que es también el tamaño máximo
+     *                de los objetos que se buscan.
+     */
+    public TiledFaceDetector(int tileSize, int overlap) {
+        if (overlap <= 0 || overlap >= tileSize) {
+            throw new IllegalArgumentException("El solapamiento debe estar entre 0 y el tamaño de la tesela");
+        }
+        this.tileSize = tileSize;
+        this.overlap = overlap;
+    }
+
+    /**
+     * Detecta objetos en toda la imagen. La proporción mínima de las opciones se aplica
+     * sobre la altura de la imagen completa, igual que en {@link FaceDetector#detect}, y
+     * su tamaño de trabajo se ignora. Los objetos menores que el solapamiento se buscan
+     * en las teselas, en paralelo; los mayores, en una copia reducida de la imagen.
+     *
+     * @param image Imagen en color (BGR) o en escala de grises.
+     * @param options Clasificador y parámetros de la detección.
+     * @return Rectángulos detectados en coordenadas de la imagen, sin duplicados.
+     */
+    public List<Rect> detect(Mat image, DetectionOptions options) {
+        try (MatScope scope = new MatScope()) {
+            Mat grayFrame = scope.add(FaceDetector.toEqualizedGray(image));
+            int minSize = Math.max(1, (int) Math.round(grayFrame.height() * options.getMinSizeRatio()));
+            List<Rect> found = new ArrayList<>();
+            if (minSize < overlap) {
+                List<Rect> tiles = getTiles(grayFrame.width(), grayFrame.height());
+                found.addAll(pool.invoke(new TileTask(grayFrame, tiles, options, minSize, overlap)));
+            }
+            found.addAll(detectLarge(grayFrame, options, Math.max(minSize, overlap)));
+            return NonMaxSuppression.suppress(found, iouThreshold);
+        }
+    }
+
+    /**
+     * Busca los objetos que no caben en una tesela sobre una copia reducida de la imagen,
+     * de forma que un objeto del tamaño del solapamiento mida {@link #fullFrameWindow}
+     * píxeles.
+     *
+     * @param grayFrame Imagen completa en escala de grises ecualizada.
+     * @param options Clasificador y parámetros de la detección.
+     * @param minSize Tamaño mínimo de objeto en píxeles de la imagen completa.
+     * @return Detecciones en coordenadas de la imagen completa.
+     */
+    private List<Rect> detectLarge(Mat grayFrame, DetectionOptions options, int minSize) {
+        double factor = Math.min(1.0, (double) fullFrameWindow / overlap);
+        List<Rect> result = new ArrayList<>();
+        try (MatScope scope = new MatScope()) {
+            Mat small = grayFrame;
+            if (factor < 1.0) {
+                long t = Metrics.start();
+                small = scope.newMat();
+                Imgproc.resize(grayFrame, small, new Size(), factor, factor, Imgproc.INTER_AREA);
+                Metrics.stop(Metrics.Stage.RESIZE, t);
+            }
+            int smallMinSize = Math.max(1, (int) Math.round(minSize * factor));
+            long t = Metrics.start();
+            MatOfRect found = scope.add(new MatOfRect());
+            CascadeRegistry.get(options.getCascade()).detectMultiScale(small, found,
+                    options.getScaleFactor(), options.getMinNeighbors(), Objdetect.CASCADE_SCALE_IMAGE,
+                    new Size(smallMinSize, smallMinSize), new Size());
+            for (Rect rect : found.toArray()) {
+                result.add(FaceDetector.scaleRect(rect, 1.0 / factor, grayFrame.size()));
+            }
+            Metrics.stop(Metrics.Stage.DETECT, t);
+        }
+        Metrics.add("detections", result.size());
+        return result;
+    }
+
+    /**
+     * Calcula las teselas que cubren la imagen. La última fila y columna se alinean con
+     * el borde para que ninguna tesela quede más pequeña que el solapamiento.
+     *
+     * @param width Ancho de la imagen.
+     * @param height Alto de la imagen.
+     * @return Rectángulos de las teselas.
+     */
+    List<Rect> getTiles(int width, int height) {
+        List<Rect> tiles = new ArrayList<>();
+        int step = tileSize - overlap;
+        for (int y = 0; ; y += step) {
+            int top = Math.max(0, Math.min(y, height - tileSize));
+            for (int x = 0; ; x += step) {
+                int left = Math.max(0, Math.min(x, width - tileSize));
+                tiles.add(new Rect(left, top, Math.min(tileSize, width - left), Math.min(tileSize, height - top)));
+                if (left + tileSize >= width) {
+                    break;
+                }
+            }
+            if (top + tileSize >= height) {
+                break;
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Tarea que reparte las teselas por mitades hasta llegar a una sola tesela.
+     */
+    private static class TileTask extends RecursiveTask<List<Rect>> {
+        private final Mat grayFrame;
+        private final List<Rect> tiles;
+        private final DetectionOptions options;
+        private final int minSize;
+        private final int maxSize;
+
+        TileTask(Mat grayFrame, List<Rect> tiles, DetectionOptions options, int minSize, int maxSize) {
+            this.grayFrame = grayFrame;
+            this.tiles = tiles;
+            this.options = options;
+            this.minSize = minSize;
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected List<Rect> compute() {
+            if (tiles.size() > 1) {
+                int middle = tiles.size() / 2;
+                TileTask left = new TileTask(grayFrame, tiles.subList(0, middle), options, minSize, maxSize);
+                TileTask right = new TileTask(grayFrame, tiles.subList(middle, tiles.size()), options, minSize, maxSize);
+                left.fork();
+                List<Rect> result = new ArrayList<>(right.compute());
+                result.addAll(left.join());
+                return result;
+            }
+            return detectTile(tiles.get(0));
+        }
+
+        /**
+         * Detecta sobre una tesela, vista como submatriz sin copiar píxeles.
+         *
+         * @param tile Rectángulo de la tesela.
+         * @return Detecciones en coordenadas de la imagen completa.
+         */
+        private List<Rect> detectTile(Rect tile) {
+            long t = Metrics.start();
+            List<Rect> result = new ArrayList<>();
+            try (MatScope scope = new MatScope()) {
+                Mat roi = scope.add(grayFrame.submat(tile));
+                MatOfRect found = scope.add(new MatOfRect());
+                CascadeRegistry.get(options.getCascade()).detectMultiScale(roi, found,
+                        options.getScaleFactor(), options.getMinNeighbors(), Objdetect.CASCADE_SCALE_IMAGE,
+                        new Size(minSize, minSize), new Size(maxSize, maxSize));
+
+                for (Rect rect : found.toArray()) {
+                    result.add(new Rect(rect.x + tile.x, rect.y + tile.y, rect.width, rect.height));
+                }
+            }
+            Metrics.stop(Metrics.Stage.DETECT, t);
+            Metrics.add("detections", result.size());
+            return result;
+        }
+    }
+}
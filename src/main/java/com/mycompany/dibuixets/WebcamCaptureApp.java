@@ -5,17 +5,14 @@ package com.mycompany.dibuixets;
 
 import org.opencv.core.Core;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfByte;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.opencv.videoio.VideoCapture;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.IOException;
-import javax.imageio.ImageIO;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Clase que representa una aplicación para capturar imágenes desde la webcam.
@@ -26,6 +23,10 @@ public class WebcamCaptureApp extends JFrame {
     private VideoCapture capture;
     private Mat frame;
     private boolean capturing = false;
+    private final BufferedImage[] displayBuffers = new BufferedImage[2];
+    private int current = 0;
+    /** Indica que hay un fotograma entregado al hilo de eventos que aún no se muestra. */
+    private final AtomicBoolean framePending = new AtomicBoolean();
 
     /**
      * Constructor de la aplicación de captura de imágenes de la webcam.
@@ -53,7 +54,9 @@ public class WebcamCaptureApp extends JFrame {
         String fileName = JOptionPane.showInputDialog(this, "Introdueix el nom del fitxer:");
         if (fileName != null && !fileName.trim().isEmpty()) {
             File outputFile = new File("images/" + fileName + ".jpg");
+            long t = Metrics.start();
             Imgcodecs.imwrite(outputFile.getAbsolutePath(), frame);
+            Metrics.stop(Metrics.Stage.ENCODE, t);
             JOptionPane.showMessageDialog(this, "Imatge desada com: " + outputFile.getAbsolutePath());
         }
     }
@@ -63,7 +66,7 @@ public class WebcamCaptureApp extends JFrame {
      * Carga la biblioteca de OpenCV antes de iniciar la captura.
      */
     public void start() {
-        System.load(Preferences.getOpenCVPath());
+        OpenCVRuntime.ensureLoaded();
         capture = new VideoCapture(0);
         frame = new Mat();
 
@@ -75,36 +78,34 @@ public class WebcamCaptureApp extends JFrame {
         capturing = true;
         new Thread(() -> {
             while (capturing) {
+                long t = Metrics.start();
                 capture.read(frame);
-                if (!frame.empty()) {
-                    BufferedImage img = matToBufferedImage(frame);
-                    ImageIcon icon = new ImageIcon(img);
-                    imageLabel.setIcon(icon);
-                    imageLabel.repaint();
+                Metrics.stop(Metrics.Stage.CAPTURE, t);
+                if (frame.empty()) {
+                    continue;
+                }
+                if (framePending.get()) {
+                    // El hilo de eventos aún no ha mostrado el anterior: se descarta este
+                    Metrics.increment("webcam.dropped");
+                    continue;
                 }
+                Metrics.increment("webcam.frames");
+                // Se alternan dos imágenes: una se muestra mientras se rellena la otra.
+                // Sin fotograma pendiente, la etiqueta ya muestra la última imagen
+                // entregada, así que la otra se puede sobrescribir.
+                current = 1 - current;
+                BufferedImage img = ImageBridge.toBufferedImage(frame, displayBuffers[current]);
+                displayBuffers[current] = img;
+                framePending.set(true);
+                SwingUtilities.invokeLater(() -> {
+                    imageLabel.setIcon(new ImageIcon(img));
+                    imageLabel.repaint();
+                    framePending.set(false);
+                });
             }
         }).start();
     }
 
-    /**
-     * Convierte un objeto Mat de OpenCV a BufferedImage.
-     *
-     * @param mat Matriz de imagen de OpenCV.
-     * @return BufferedImage representando la imagen.
-     */
-    private BufferedImage matToBufferedImage(Mat mat) {
-        MatOfByte matOfByte = new MatOfByte();
-        Imgcodecs.imencode(".jpg", mat, matOfByte);
-        byte[] byteArray = matOfByte.toArray();
-        BufferedImage img = null;
-        try {
-            img = ImageIO.read(new ByteArrayInputStream(byteArray));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-        return img;
-    }
-
     /**
      * Método principal que inicia la aplicación en el hilo de eventos de Swing.
      * 